@@ -20,9 +20,12 @@ import me.egg82.altfinder.commands.SeenCommand;
 import me.egg82.altfinder.events.PlayerLoginCacheHandler;
 import me.egg82.altfinder.events.PlayerLoginUpdateNotifyHandler;
 import me.egg82.altfinder.extended.Configuration;
+import me.egg82.altfinder.extended.RedisSubscriber;
 import me.egg82.altfinder.hooks.PlayerAnalyticsHook;
 import me.egg82.altfinder.hooks.PluginHook;
 import me.egg82.altfinder.services.GameAnalyticsErrorHandler;
+import me.egg82.altfinder.services.LoginRecorder;
+import me.egg82.altfinder.services.lookup.PlayerLookup;
 import me.egg82.altfinder.utils.*;
 import ninja.egg82.events.BukkitEventSubscriber;
 import ninja.egg82.events.BukkitEvents;
@@ -46,6 +49,8 @@ public class AltFinder {
 
     private ExecutorService workPool = Executors.newFixedThreadPool(1, new ThreadFactoryBuilder().setNameFormat("AltFinder-%d").build());
 
+    private LoginRecorder loginRecorder;
+
     private TaskChainFactory taskFactory;
     private PaperCommandManager commandManager;
 
@@ -126,6 +131,8 @@ public class AltFinder {
         ServiceUtil.registerRabbit();
         ServiceUtil.registerSQL();
 
+        loginRecorder = new LoginRecorder(4096, 256);
+
         ServiceLocator.register(new SpigotUpdater(plugin, 57678));
     }
 
@@ -167,7 +174,7 @@ public class AltFinder {
     }
 
     private void loadEvents() {
-        events.add(BukkitEvents.subscribe(plugin, PlayerLoginEvent.class, EventPriority.LOW).handler(e -> new PlayerLoginCacheHandler().accept(e)));
+        events.add(BukkitEvents.subscribe(plugin, PlayerLoginEvent.class, EventPriority.LOW).handler(e -> new PlayerLoginCacheHandler(loginRecorder).accept(e)));
         events.add(BukkitEvents.subscribe(plugin, PlayerLoginEvent.class, EventPriority.LOW).handler(e -> new PlayerLoginUpdateNotifyHandler(plugin).accept(e)));
     }
 
@@ -272,6 +279,19 @@ public class AltFinder {
     }
 
     public void unloadServices() {
+        if (loginRecorder != null) {
+            loginRecorder.close(8L, TimeUnit.SECONDS);
+            loginRecorder = null;
+        }
+
+        ConfigUtil.getCachedConfig().ifPresent(EngineConfigUtil::close);
+        PlayerLookup.close();
+        try {
+            ServiceLocator.getOptional(RedisSubscriber.class).ifPresent(RedisSubscriber::close);
+        } catch (InstantiationException | IllegalAccessException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+
         ServiceUtil.unregisterWorkPool();
         ServiceUtil.unregisterRedis();
         ServiceUtil.unregisterRabbit();
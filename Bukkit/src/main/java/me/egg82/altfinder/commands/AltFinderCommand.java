@@ -31,11 +31,11 @@ public class AltFinderCommand extends BaseCommand {
 
     @Subcommand("search|find")
     @CommandPermission("altfinder.search")
-    @Description("Finds potential alt accounts on the IP or player specified.")
-    @Syntax("<ip|name>")
+    @Description("Finds potential alt accounts on the IP or player specified, following alts-of-alts out to depth hops.")
+    @Syntax("<ip|name> [depth]")
     @CommandCompletion("@player")
-    public void onSearch(CommandSender sender, String search) {
-        new SearchCommand(taskFactory.newChain(), sender, search).run();
+    public void onSearch(CommandSender sender, String search, @Default("2") int depth) {
+        new SearchCommand(taskFactory.newChain(), sender, search, depth).run();
     }
 
     @Subcommand("delete|del|gdpr")
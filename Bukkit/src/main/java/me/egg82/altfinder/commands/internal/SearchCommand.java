@@ -23,13 +23,18 @@ public class SearchCommand implements Runnable {
     private final TaskChain<?> chain;
     private final CommandSender sender;
     private final String search;
+    private final int depth;
+
+    private static final int MAX_DEPTH = 5;
+    private static final int MAX_PLAYERS = 100;
 
     private final AltAPI api = AltAPI.getInstance();
 
-    public SearchCommand(TaskChain<?> chain, CommandSender sender, String search) {
+    public SearchCommand(TaskChain<?> chain, CommandSender sender, String search, int depth) {
         this.chain = chain;
         this.sender = sender;
         this.search = search;
+        this.depth = Math.max(1, Math.min(depth, MAX_DEPTH));
     }
 
     public void run() {
@@ -48,7 +53,7 @@ public class SearchCommand implements Runnable {
                             return;
                         }
                         for (PlayerData d : data) {
-                            playerInfo.add(new PlayerInfoContainer(d).setName(getName(d.getUUID())));
+                            playerInfo.add(new PlayerInfoContainer(d));
                         }
                         f.accept(playerInfo);
                     })
@@ -59,8 +64,13 @@ public class SearchCommand implements Runnable {
                         }
                     })
                     .async(v -> {
+                        Set<UUID> uuids = new HashSet<>();
+                        for (PlayerInfoContainer i : v) {
+                            uuids.add(i.getData().getUUID());
+                        }
+                        Map<UUID, String> names = PlayerLookup.getNames(uuids);
                         for (PlayerInfoContainer i : v) {
-                            i.setName(getName(i.getData().getUUID()));
+                            i.setName(names.get(i.getData().getUUID()));
                         }
                         return v;
                     })
@@ -94,32 +104,17 @@ public class SearchCommand implements Runnable {
                             sender.sendMessage(ChatColor.DARK_RED + "Could not get UUID for " + ChatColor.WHITE + search + ChatColor.DARK_RED + " (rate-limited?)");
                         }
                     })
-                    .<Set<PlayerInfoContainer>>asyncCallback((v, f) -> {
-                        ImmutableSet<PlayerData> playerData;
+                    .<Map<UUID, Integer>>asyncCallback((v, f) -> {
+                        Map<UUID, Integer> linked;
                         try {
-                            playerData = api.getPlayerData(v);
+                            linked = new LinkedHashMap<>(api.getLinkedPlayers(v, depth, MAX_PLAYERS));
                         } catch (APIException ex) {
                             logger.error(ex.getMessage(), ex);
                             f.accept(null);
                             return;
                         }
-
-                        Set<PlayerData> altData = new HashSet<>(playerData);
-                        for (PlayerData data : playerData) {
-                            try {
-                                altData.addAll(api.getPlayerData(data.getIP()));
-                            } catch (APIException ex) {
-                                logger.error(ex.getMessage(), ex);
-                            }
-                        }
-                        altData.removeIf(v2 -> v.equals(v2.getUUID()));
-
-                        Set<PlayerInfoContainer> altInfo = new HashSet<>();
-                        for (PlayerData data : altData) {
-                            altInfo.add(new PlayerInfoContainer(data));
-                        }
-
-                        f.accept(altInfo);
+                        linked.remove(v);
+                        f.accept(linked);
                     })
                     .abortIfNull(new TaskChainAbortAction<Object, Object, Object>() {
                         @Override
@@ -127,43 +122,49 @@ public class SearchCommand implements Runnable {
                             sender.sendMessage(LogUtil.getHeading() + LogUtil.getHeading() + ChatColor.YELLOW + "Internal error");
                         }
                     })
-                    .async(v -> {
-                        for (PlayerInfoContainer i : v) {
-                            i.setName(getName(i.getData().getUUID()));
+                    .<Map<Integer, StringBuilder>>async(v -> {
+                        // One batch lookup, so alts are listed most-seen first within each hop
+                        Map<UUID, Long> counts = new HashMap<>();
+                        try {
+                            for (PlayerData data : api.getPlayerDataByUUIDs(v.keySet())) {
+                                counts.merge(data.getUUID(), data.getCount(), Long::sum);
+                            }
+                        } catch (APIException ex) {
+                            logger.error(ex.getMessage(), ex);
                         }
-                        return v;
-                    })
-                    .syncLast(v -> {
-                        List<PlayerInfoContainer> sorted = new ArrayList<>(v);
-                        sorted.sort((v1, v2) -> Long.compare(v2.getData().getCount(), v1.getData().getCount()));
+                        List<UUID> sorted = new ArrayList<>(v.keySet());
+                        sorted.sort(Comparator.<UUID>comparingInt(v::get).thenComparing(u -> counts.getOrDefault(u, 0L), Comparator.reverseOrder()));
 
-                        StringBuilder alts = new StringBuilder();
-                        for (PlayerInfoContainer info : sorted) {
-                            alts.append(info.getName() != null ? ChatColor.GREEN + info.getName() : ChatColor.RED + "UNKNOWN").append(ChatColor.YELLOW + ", ");
+                        Map<UUID, String> names = PlayerLookup.getNames(sorted);
+                        Map<Integer, StringBuilder> alts = new TreeMap<>();
+                        for (UUID uuid : sorted) {
+                            String name = names.get(uuid);
+                            alts.computeIfAbsent(v.get(uuid), k -> new StringBuilder())
+                                    .append(name != null ? ChatColor.GREEN + name : ChatColor.RED + "UNKNOWN").append(ChatColor.YELLOW + ", ");
                         }
-                        if (alts.length() > 0) {
-                            alts.delete(alts.length() - 4, alts.length());
+                        for (StringBuilder a : alts.values()) {
+                            a.delete(a.length() - 4, a.length());
                         }
-
-                        if (alts.length() == 0) {
+                        return alts;
+                    })
+                    .syncLast(v -> {
+                        if (v.isEmpty()) {
                             sender.sendMessage(LogUtil.getHeading() + ChatColor.RED + "No potential alts found.");
-                        } else {
-                            sender.sendMessage(LogUtil.getHeading() + ChatColor.YELLOW + "Potential alts: " + alts.toString());
+                            return;
+                        }
+
+                        for (Map.Entry<Integer, StringBuilder> kvp : v.entrySet()) {
+                            if (kvp.getKey() == 1) {
+                                sender.sendMessage(LogUtil.getHeading() + ChatColor.YELLOW + "Potential alts: " + kvp.getValue().toString());
+                            } else {
+                                sender.sendMessage(LogUtil.getHeading() + ChatColor.YELLOW + "Alts " + kvp.getKey() + " hops away: " + kvp.getValue().toString());
+                            }
                         }
                     })
                     .execute();
         }
     }
 
-    private String getName(UUID uuid) {
-        try {
-            return PlayerLookup.get(uuid).getName();
-        } catch (IOException ex) {
-            logger.error(ex.getMessage(), ex);
-            return null;
-        }
-    }
-
     private UUID getUuid(String name) {
         try {
             return PlayerLookup.get(name).getUUID();
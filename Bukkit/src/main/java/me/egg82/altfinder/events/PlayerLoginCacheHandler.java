@@ -3,9 +3,8 @@ package me.egg82.altfinder.events;
 import java.net.InetAddress;
 import java.util.Optional;
 import java.util.function.Consumer;
-import me.egg82.altfinder.APIException;
-import me.egg82.altfinder.AltAPI;
 import me.egg82.altfinder.extended.CachedConfigValues;
+import me.egg82.altfinder.services.LoginRecorder;
 import me.egg82.altfinder.utils.ConfigUtil;
 import me.egg82.altfinder.utils.LogUtil;
 import org.bukkit.ChatColor;
@@ -16,7 +15,11 @@ import org.slf4j.LoggerFactory;
 public class PlayerLoginCacheHandler implements Consumer<PlayerLoginEvent> {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final AltAPI api = AltAPI.getInstance();
+    private final LoginRecorder recorder;
+
+    public PlayerLoginCacheHandler(LoginRecorder recorder) {
+        this.recorder = recorder;
+    }
 
     public void accept(PlayerLoginEvent event) {
         String ip = getIp(event.getAddress());
@@ -45,11 +48,8 @@ public class PlayerLoginCacheHandler implements Consumer<PlayerLoginEvent> {
             logger.info(LogUtil.getHeading() + ChatColor.YELLOW + "Logging UUID " + ChatColor.WHITE + event.getPlayer().getUniqueId() + ChatColor.YELLOW + " with IP " + ChatColor.WHITE + ip +  ChatColor.YELLOW + ".");
         }
 
-        try {
-            api.addPlayerData(event.getPlayer().getUniqueId(), ip, cachedConfig.get().getServerName());
-        } catch (APIException ex) {
-            logger.error(ex.getMessage(), ex);
-        }
+        // PlayerLoginEvent runs on the main thread, so only queue the login here
+        recorder.record(event.getPlayer().getUniqueId(), ip, cachedConfig.get().getServerName());
     }
 
     private String getIp(InetAddress address) {
@@ -10,6 +10,8 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import ninja.egg82.json.JSONUtil;
 import org.bukkit.Bukkit;
@@ -25,20 +27,26 @@ public class BukkitPlayerInfo implements PlayerInfo {
     private static Cache<UUID, String> uuidCache = Caffeine.newBuilder().expireAfterWrite(1L, TimeUnit.HOURS).build();
     private static Cache<String, UUID> nameCache = Caffeine.newBuilder().expireAfterWrite(1L, TimeUnit.HOURS).build();
 
-    private static final Object uuidCacheLock = new Object();
-    private static final Object nameCacheLock = new Object();
+    // Locked per key, so only lookups of the same player wait on each other
+    private static final ConcurrentMap<UUID, Object> uuidLocks = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Object> nameLocks = new ConcurrentHashMap<>();
 
     BukkitPlayerInfo(UUID uuid) throws IOException {
         this.uuid = uuid;
 
         Optional<String> name = Optional.ofNullable(uuidCache.getIfPresent(uuid));
         if (!name.isPresent()) {
-            synchronized (uuidCacheLock) {
-                name = Optional.ofNullable(uuidCache.getIfPresent(uuid));
-                if (!name.isPresent()) {
-                    name = Optional.ofNullable(nameExpensive(uuid));
-                    name.ifPresent(v -> uuidCache.put(uuid, v));
+            Object lock = uuidLocks.computeIfAbsent(uuid, k -> new Object());
+            try {
+                synchronized (lock) {
+                    name = Optional.ofNullable(uuidCache.getIfPresent(uuid));
+                    if (!name.isPresent()) {
+                        name = Optional.ofNullable(nameExpensive(uuid));
+                        name.ifPresent(v -> uuidCache.put(uuid, v));
+                    }
                 }
+            } finally {
+                uuidLocks.remove(uuid, lock);
             }
         }
 
@@ -50,12 +58,17 @@ public class BukkitPlayerInfo implements PlayerInfo {
 
         Optional<UUID> uuid = Optional.ofNullable(nameCache.getIfPresent(name));
         if (!uuid.isPresent()) {
-            synchronized (nameCacheLock) {
-                uuid = Optional.ofNullable(nameCache.getIfPresent(name));
-                if (!uuid.isPresent()) {
-                    uuid = Optional.ofNullable(uuidExpensive(name));
-                    uuid.ifPresent(v -> nameCache.put(name, v));
+            Object lock = nameLocks.computeIfAbsent(name, k -> new Object());
+            try {
+                synchronized (lock) {
+                    uuid = Optional.ofNullable(nameCache.getIfPresent(name));
+                    if (!uuid.isPresent()) {
+                        uuid = Optional.ofNullable(uuidExpensive(name));
+                        uuid.ifPresent(v -> nameCache.put(name, v));
+                    }
                 }
+            } finally {
+                nameLocks.remove(name, lock);
             }
         }
 
@@ -75,6 +88,7 @@ public class BukkitPlayerInfo implements PlayerInfo {
         }
 
         // Network lookup
+        PlayerLookup.acquireNetwork();
         HttpURLConnection conn = getConnection(new URL("https://api.mojang.com/user/profiles/" + uuid.toString().replace("-", "") + "/names"));
 
         int code = conn.getResponseCode();
@@ -115,6 +129,7 @@ public class BukkitPlayerInfo implements PlayerInfo {
         }
 
         // Network lookup
+        PlayerLookup.acquireNetwork();
         HttpURLConnection conn = getConnection(new URL("https://api.mojang.com/users/profiles/minecraft/" + name));
 
         int code = conn.getResponseCode();
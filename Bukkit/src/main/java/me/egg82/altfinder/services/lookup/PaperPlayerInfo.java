@@ -6,6 +6,8 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import java.io.IOException;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
@@ -17,20 +19,26 @@ public class PaperPlayerInfo implements PlayerInfo {
     private static Cache<UUID, String> uuidCache = Caffeine.newBuilder().expireAfterAccess(1L, TimeUnit.MINUTES).expireAfterWrite(1L, TimeUnit.HOURS).build();
     private static Cache<String, UUID> nameCache = Caffeine.newBuilder().expireAfterAccess(1L, TimeUnit.MINUTES).expireAfterWrite(1L, TimeUnit.HOURS).build();
 
-    private static final Object uuidCacheLock = new Object();
-    private static final Object nameCacheLock = new Object();
+    // Locked per key, so only lookups of the same player wait on each other
+    private static final ConcurrentMap<UUID, Object> uuidLocks = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Object> nameLocks = new ConcurrentHashMap<>();
 
     PaperPlayerInfo(UUID uuid) throws IOException {
         this.uuid = uuid;
 
         Optional<String> name = Optional.ofNullable(uuidCache.getIfPresent(uuid));
         if (!name.isPresent()) {
-            synchronized (uuidCacheLock) {
-                name = Optional.ofNullable(uuidCache.getIfPresent(uuid));
-                if (!name.isPresent()) {
-                    name = Optional.ofNullable(nameExpensive(uuid));
-                    name.ifPresent(v -> uuidCache.put(uuid, v));
+            Object lock = uuidLocks.computeIfAbsent(uuid, k -> new Object());
+            try {
+                synchronized (lock) {
+                    name = Optional.ofNullable(uuidCache.getIfPresent(uuid));
+                    if (!name.isPresent()) {
+                        name = Optional.ofNullable(nameExpensive(uuid));
+                        name.ifPresent(v -> uuidCache.put(uuid, v));
+                    }
                 }
+            } finally {
+                uuidLocks.remove(uuid, lock);
             }
         }
 
@@ -42,12 +50,17 @@ public class PaperPlayerInfo implements PlayerInfo {
 
         Optional<UUID> uuid = Optional.ofNullable(nameCache.getIfPresent(name));
         if (!uuid.isPresent()) {
-            synchronized (nameCacheLock) {
-                uuid = Optional.ofNullable(nameCache.getIfPresent(name));
-                if (!uuid.isPresent()) {
-                    uuid = Optional.ofNullable(uuidExpensive(name));
-                    uuid.ifPresent(v -> nameCache.put(name, v));
+            Object lock = nameLocks.computeIfAbsent(name, k -> new Object());
+            try {
+                synchronized (lock) {
+                    uuid = Optional.ofNullable(nameCache.getIfPresent(name));
+                    if (!uuid.isPresent()) {
+                        uuid = Optional.ofNullable(uuidExpensive(name));
+                        uuid.ifPresent(v -> nameCache.put(name, v));
+                    }
                 }
+            } finally {
+                nameLocks.remove(name, lock);
             }
         }
 
@@ -74,6 +87,7 @@ public class PaperPlayerInfo implements PlayerInfo {
         }
 
         // Network lookup
+        PlayerLookup.acquireNetwork();
         if (profile.complete(false) && profile.getName() != null && profile.getId() != null) {
             nameCache.put(profile.getName(), profile.getId());
             return profile.getName();
@@ -99,6 +113,7 @@ public class PaperPlayerInfo implements PlayerInfo {
         }
 
         // Network lookup
+        PlayerLookup.acquireNetwork();
         if (profile.complete(false) && profile.getName() != null && profile.getId() != null) {
             uuidCache.put(profile.getId(), profile.getName());
             return profile.getId();
@@ -13,6 +13,7 @@ import me.egg82.altfinder.enums.SQLType;
 import me.egg82.altfinder.extended.CachedConfigValues;
 import me.egg82.altfinder.extended.Configuration;
 import me.egg82.altfinder.extended.RabbitMQReceiver;
+import me.egg82.altfinder.extended.RedisSubscriber;
 import ninja.egg82.service.ServiceLocator;
 import ninja.egg82.sql.SQL;
 import ninja.leaping.configurate.ConfigurationNode;
@@ -67,23 +68,31 @@ public class ConfigurationFileUtil {
         }
 
         try {
-            destroyServices(ServiceLocator.getOptional(CachedConfigValues.class), ServiceLocator.getOptional(RabbitMQReceiver.class));
+            destroyServices(ServiceLocator.getOptional(CachedConfigValues.class), ServiceLocator.getOptional(RabbitMQReceiver.class), ServiceLocator.getOptional(RedisSubscriber.class));
         } catch (InstantiationException | IllegalAccessException | IOException | TimeoutException ex) {
             logger.error(ex.getMessage(), ex);
         }
 
-        CachedConfigValues cachedValues = CachedConfigValues.builder()
+        String serverName = ServerNameUtil.getName(new File(plugin.getDataFolder(), "server-name.txt"));
+        CachedConfigValues.Builder cachedBuilder = CachedConfigValues.builder()
                 .debug(debug)
                 .ignored(ignored)
                 .redisPool(getRedisPool(config.getNode("redis")))
                 .rabbitConnectionFactory(getRabbitConnectionFactory(config.getNode("rabbitmq")))
                 .sql(getSQL(plugin, config.getNode("storage")))
                 .sqlType(config.getNode("storage", "method").getString("sqlite"))
-                .serverName(ServerNameUtil.getName(new File(plugin.getDataFolder(), "server-name.txt")))
-                .build();
+                .serverName(serverName);
+        EngineConfigUtil.load(cachedBuilder, config, plugin.getDataFolder(), ServerIDUtil.getID(new File(plugin.getDataFolder(), "stats-id.txt")), serverName);
+        CachedConfigValues cachedValues = cachedBuilder.build();
 
         ServiceLocator.register(config);
         ServiceLocator.register(cachedValues);
+        ConfigUtil.setConfiguration(config, cachedValues);
+
+        // Connects through the cached config, so only after it's set
+        if (cachedValues.getRedisPool() != null) {
+            ServiceLocator.register(new RedisSubscriber());
+        }
 
         if (debug) {
             logger.info(LogUtil.getHeading() + ChatColor.YELLOW + "Using Redis: " + ChatColor.WHITE + (cachedValues.getRedisPool() != null));
@@ -126,11 +135,12 @@ public class ConfigurationFileUtil {
         return config;
     }
 
-    private static void destroyServices(Optional<CachedConfigValues> cachedConfigValues, Optional<RabbitMQReceiver> rabbitReceiver) throws IOException, TimeoutException {
+    private static void destroyServices(Optional<CachedConfigValues> cachedConfigValues, Optional<RabbitMQReceiver> rabbitReceiver, Optional<RedisSubscriber> redisSubscriber) throws IOException, TimeoutException {
         if (!cachedConfigValues.isPresent()) {
             return;
         }
 
+        EngineConfigUtil.close(cachedConfigValues.get());
         cachedConfigValues.get().getSQL().close();
 
         if (cachedConfigValues.get().getRedisPool() != null) {
@@ -140,6 +150,10 @@ public class ConfigurationFileUtil {
         if (rabbitReceiver.isPresent()) {
             rabbitReceiver.get().close();
         }
+
+        if (redisSubscriber.isPresent()) {
+            redisSubscriber.get().close();
+        }
     }
 
     private static SQL getSQL(Plugin plugin, ConfigurationNode storageConfigNode) {
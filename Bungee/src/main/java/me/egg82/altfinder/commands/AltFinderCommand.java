@@ -27,10 +27,10 @@ public class AltFinderCommand extends BaseCommand {
 
     @Subcommand("search|find")
     @CommandPermission("altfinder.search")
-    @Description("Finds potential alt accounts on the IP or player specified.")
-    @Syntax("<ip|name>")
-    public void onSearch(CommandSender sender, String search) {
-        new SearchCommand(sender, search).run();
+    @Description("Finds potential alt accounts on the IP or player specified, following alts-of-alts out to depth hops.")
+    @Syntax("<ip|name> [depth]")
+    public void onSearch(CommandSender sender, String search, @Default("2") int depth) {
+        new SearchCommand(sender, search, depth).run();
     }
 
     @Subcommand("delete|del|gdpr")
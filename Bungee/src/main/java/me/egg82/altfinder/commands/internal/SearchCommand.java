@@ -21,12 +21,17 @@ public class SearchCommand implements Runnable {
 
     private final CommandSender sender;
     private final String search;
+    private final int depth;
+
+    private static final int MAX_DEPTH = 5;
+    private static final int MAX_PLAYERS = 100;
 
     private final AltAPI api = AltAPI.getInstance();
 
-    public SearchCommand(CommandSender sender, String search) {
+    public SearchCommand(CommandSender sender, String search, int depth) {
         this.sender = sender;
         this.search = search;
+        this.depth = Math.max(1, Math.min(depth, MAX_DEPTH));
     }
 
     public void run() {
@@ -42,12 +47,13 @@ public class SearchCommand implements Runnable {
                 sender.sendMessage(new TextComponent(LogUtil.getHeading() + ChatColor.DARK_RED + "Internal error"));
                 return;
             }
+            Set<UUID> uuids = new HashSet<>();
             for (PlayerData d : data) {
-                playerInfo.add(new PlayerInfoContainer(d).setName(getName(d.getUUID())));
+                uuids.add(d.getUUID());
             }
-
-            for (PlayerInfoContainer i : playerInfo) {
-                i.setName(getName(i.getData().getUUID()));
+            Map<UUID, String> names = PlayerLookup.getNames(uuids);
+            for (PlayerData d : data) {
+                playerInfo.add(new PlayerInfoContainer(d).setName(names.get(d.getUUID())));
             }
 
             List<PlayerInfoContainer> sorted = new ArrayList<>(playerInfo);
@@ -75,62 +81,53 @@ public class SearchCommand implements Runnable {
                 return;
             }
 
-            ImmutableSet<PlayerData> playerData;
+            Map<UUID, Integer> linked;
             try {
-                playerData = api.getPlayerData(uuid);
+                linked = new LinkedHashMap<>(api.getLinkedPlayers(uuid, depth, MAX_PLAYERS));
             } catch (APIException ex) {
                 logger.error(ex.getMessage(), ex);
                 sender.sendMessage(new TextComponent(LogUtil.getHeading() + ChatColor.DARK_RED + "Internal error"));
                 return;
             }
+            linked.remove(uuid);
 
-            Set<PlayerData> altData = new HashSet<>(playerData);
-            for (PlayerData data : playerData) {
-                try {
-                    altData.addAll(api.getPlayerData(data.getIP()));
-                } catch (APIException ex) {
-                    logger.error(ex.getMessage(), ex);
-                }
-            }
-            altData.removeIf(v2 -> uuid.equals(v2.getUUID()));
-
-            Set<PlayerInfoContainer> altInfo = new HashSet<>();
-            for (PlayerData data : altData) {
-                altInfo.add(new PlayerInfoContainer(data));
-            }
-
-            for (PlayerInfoContainer i :altInfo) {
-                i.setName(getName(i.getData().getUUID()));
+            if (linked.isEmpty()) {
+                sender.sendMessage(new TextComponent(LogUtil.getHeading() + ChatColor.RED + "No potential alts found."));
+                return;
             }
 
-            List<PlayerInfoContainer> sorted = new ArrayList<>(altInfo);
-            sorted.sort((v1, v2) -> Long.compare(v2.getData().getCount(), v1.getData().getCount()));
-
-            StringBuilder alts = new StringBuilder();
-            for (PlayerInfoContainer info : sorted) {
-                alts.append(info.getName() != null ? ChatColor.GREEN + info.getName() : ChatColor.RED + "UNKNOWN").append(ChatColor.YELLOW + ", ");
+            // One batch lookup, so alts are listed most-seen first within each hop
+            Map<UUID, Long> counts = new HashMap<>();
+            try {
+                for (PlayerData data : api.getPlayerDataByUUIDs(linked.keySet())) {
+                    counts.merge(data.getUUID(), data.getCount(), Long::sum);
+                }
+            } catch (APIException ex) {
+                logger.error(ex.getMessage(), ex);
             }
-            if (alts.length() > 0) {
-                alts.delete(alts.length() - 4, alts.length());
+            List<UUID> sorted = new ArrayList<>(linked.keySet());
+            sorted.sort(Comparator.<UUID>comparingInt(linked::get).thenComparing(u -> counts.getOrDefault(u, 0L), Comparator.reverseOrder()));
+
+            Map<UUID, String> names = PlayerLookup.getNames(sorted);
+            Map<Integer, StringBuilder> alts = new TreeMap<>();
+            for (UUID alt : sorted) {
+                String name = names.get(alt);
+                alts.computeIfAbsent(linked.get(alt), k -> new StringBuilder())
+                        .append(name != null ? ChatColor.GREEN + name : ChatColor.RED + "UNKNOWN").append(ChatColor.YELLOW + ", ");
             }
 
-            if (alts.length() == 0) {
-                sender.sendMessage(new TextComponent(LogUtil.getHeading() + ChatColor.RED + "No potential alts found."));
-            } else {
-                sender.sendMessage(new TextComponent(LogUtil.getHeading() + ChatColor.YELLOW + "Potential alts: " + alts.toString()));
+            for (Map.Entry<Integer, StringBuilder> kvp : alts.entrySet()) {
+                StringBuilder a = kvp.getValue();
+                a.delete(a.length() - 4, a.length());
+                if (kvp.getKey() == 1) {
+                    sender.sendMessage(new TextComponent(LogUtil.getHeading() + ChatColor.YELLOW + "Potential alts: " + a.toString()));
+                } else {
+                    sender.sendMessage(new TextComponent(LogUtil.getHeading() + ChatColor.YELLOW + "Alts " + kvp.getKey() + " hops away: " + a.toString()));
+                }
             }
         }
     }
 
-    private String getName(UUID uuid) {
-        try {
-            return PlayerLookup.get(uuid).getName();
-        } catch (IOException ex) {
-            logger.error(ex.getMessage(), ex);
-            return null;
-        }
-    }
-
     private UUID getUuid(String name) {
         try {
             return PlayerLookup.get(name).getUUID();
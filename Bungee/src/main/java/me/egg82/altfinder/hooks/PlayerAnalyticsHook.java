@@ -8,7 +8,6 @@ import com.djrapitops.plan.data.plugin.PluginData;
 import com.djrapitops.plan.utilities.html.icon.Color;
 import com.djrapitops.plan.utilities.html.icon.Icon;
 import com.google.common.collect.ImmutableSet;
-import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.*;
@@ -57,17 +56,20 @@ public class PlayerAnalyticsHook implements PluginHook {
             }
 
             Set<PlayerData> altData = new HashSet<>(uuidData);
+            Set<String> ips = new HashSet<>();
 
             PlayerData latest = null;
             for (PlayerData data : uuidData) {
                 if (latest == null || data.getUpdated() > latest.getUpdated()) {
                     latest = data;
                 }
-                try {
-                    altData.addAll(api.getPlayerData(data.getIP()));
-                } catch (APIException ex) {
-                    logger.error(ex.getMessage(), ex);
-                }
+                ips.add(data.getIP());
+            }
+
+            try {
+                altData.addAll(api.getPlayerDataByIPs(ips));
+            } catch (APIException ex) {
+                logger.error(ex.getMessage(), ex);
             }
 
             altData.removeIf(v -> uuid.equals(v.getUUID()));
@@ -82,9 +84,19 @@ public class PlayerAnalyticsHook implements PluginHook {
             altSorted.sort(Comparator.comparingLong(PlayerData::getCount));
             Collections.reverse(altSorted);
 
+            // Every name shown below, resolved in one go
+            Set<UUID> uuids = new HashSet<>();
+            for (PlayerData data : altSorted) {
+                uuids.add(data.getUUID());
+            }
+            for (PlayerData data : ipSorted) {
+                uuids.add(data.getUUID());
+            }
+            Map<UUID, String> names = PlayerLookup.getNames(uuids);
+
             StringBuilder alts = new StringBuilder();
             for (PlayerData data : altSorted) {
-                String name = getName(data.getUUID());
+                String name = names.get(data.getUUID());
                 alts.append(name != null ? name : "**UNKNOWN**").append(", ");
             }
             if (alts.length() > 0) {
@@ -123,7 +135,7 @@ public class PlayerAnalyticsHook implements PluginHook {
                 }
 
                 for (PlayerData data : ipSorted) {
-                    String name = getName(data.getUUID());
+                    String name = names.get(data.getUUID());
                     container.addValue("Player", (name != null ? name : "**UNKNOWN**"));
                     container.addValue(" - First seen", getTime(data.getCreated(), current) + " ago");
                     container.addValue(" - Last seen", getTime(data.getUpdated(), current) + " ago on " + data.getServer());
@@ -150,15 +162,6 @@ public class PlayerAnalyticsHook implements PluginHook {
             return host.getHostAddress();
         }
 
-        private String getName(UUID uuid) {
-            try {
-                return PlayerLookup.get(uuid).getName();
-            } catch (IOException ex) {
-                logger.error(ex.getMessage(), ex);
-                return null;
-            }
-        }
-
         private String getTime(long time, long current) {
             long newTime = current - time;
             return DurationFormatUtils.formatDurationWords(newTime, true, true);
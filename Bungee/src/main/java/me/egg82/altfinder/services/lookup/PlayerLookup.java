@@ -1,11 +1,22 @@
 package me.egg82.altfinder.services.lookup;
 
+import com.google.common.util.concurrent.RateLimiter;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import me.egg82.altfinder.services.NameResolver;
 
 public class PlayerLookup {
     private PlayerLookup() {}
 
+    private static final NameResolver resolver = new NameResolver(8, 30L, TimeUnit.SECONDS);
+
+    // Most lookups are answered by the online player list or a cache, this only stops a big
+    // search from firing a burst of Mojang requests at once
+    private static final RateLimiter networkLimiter = RateLimiter.create(10.0d);
+
     public static PlayerInfo get(UUID uuid) throws IOException {
         if (uuid == null) {
             throw new IllegalArgumentException("uuid cannot be null.");
@@ -21,4 +32,17 @@ public class PlayerLookup {
 
         return new BungeePlayerInfo(name);
     }
+
+    /**
+     * Looks up many names at once, concurrently and de-duplicated.
+     * @return names keyed by UUID. UUIDs which couldn't be resolved are left out
+     */
+    public static Map<UUID, String> getNames(Collection<UUID> uuids) { return resolver.resolve(uuids, uuid -> get(uuid).getName()); }
+
+    public static void close() { resolver.close(); }
+
+    /**
+     * Blocks until another Mojang request is allowed. Called only right before a network lookup.
+     */
+    static void acquireNetwork() { networkLimiter.acquire(); }
 }
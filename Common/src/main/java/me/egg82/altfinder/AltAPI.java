@@ -1,6 +1,8 @@
 package me.egg82.altfinder;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import java.util.Collection;
 import java.util.UUID;
 import me.egg82.altfinder.core.PlayerData;
 import me.egg82.altfinder.services.InternalAPI;
@@ -14,7 +16,12 @@ public class AltAPI {
 
     public static AltAPI getInstance() { return api; }
 
-    public void addPlayerData(UUID uuid, String ip, String server) throws APIException {
+    public void addPlayerData(UUID uuid, String ip, String server) throws APIException { addPlayerData(uuid, ip, server, System.currentTimeMillis()); }
+
+    /**
+     * Adds a login that happened at the given time, in epoch millis. New rows are created at that time.
+     */
+    public void addPlayerData(UUID uuid, String ip, String server, long time) throws APIException {
         if (uuid == null) {
             throw new IllegalArgumentException("uuid cannot be null.");
         }
@@ -28,7 +35,7 @@ public class AltAPI {
             throw new IllegalArgumentException("server cannot be null.");
         }
 
-        internalApi.add(uuid, ip, server);
+        internalApi.add(uuid, ip, server, time);
     }
 
     public void removePlayerData(UUID uuid) throws APIException {
@@ -68,4 +75,59 @@ public class AltAPI {
 
         return ImmutableSet.copyOf(internalApi.getPlayerData(ip));
     }
+
+    /**
+     * getPlayerData for many IPs at once, in a couple of round trips rather than one or two per IP.
+     */
+    public ImmutableSet<PlayerData> getPlayerDataByIPs(Collection<String> ips) throws APIException {
+        if (ips == null) {
+            throw new IllegalArgumentException("ips cannot be null.");
+        }
+        for (String ip : ips) {
+            if (ip == null) {
+                throw new IllegalArgumentException("ips cannot contain null.");
+            }
+            if (!ValidationUtil.isValidIp(ip)) {
+                throw new IllegalArgumentException("ips contains an invalid IP.");
+            }
+        }
+
+        return ImmutableSet.copyOf(internalApi.getPlayerDataByIPs(ips));
+    }
+
+    /**
+     * getPlayerData for many players at once, in a couple of round trips rather than one or two per player.
+     */
+    public ImmutableSet<PlayerData> getPlayerDataByUUIDs(Collection<UUID> uuids) throws APIException {
+        if (uuids == null) {
+            throw new IllegalArgumentException("uuids cannot be null.");
+        }
+        for (UUID uuid : uuids) {
+            if (uuid == null) {
+                throw new IllegalArgumentException("uuids cannot contain null.");
+            }
+        }
+
+        return ImmutableSet.copyOf(internalApi.getPlayerDataByUUIDs(uuids));
+    }
+
+    /**
+     * Finds every player linked to the player through shared IPs, following alts-of-alts out to maxDepth hops.
+     * A depth of 1 is the players sharing an IP with the player.
+     * @return the hop distance of each linked player, nearest first, including the player itself at 0.
+     *         Stops at maxPlayers players
+     */
+    public ImmutableMap<UUID, Integer> getLinkedPlayers(UUID uuid, int maxDepth, int maxPlayers) throws APIException {
+        if (uuid == null) {
+            throw new IllegalArgumentException("uuid cannot be null.");
+        }
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth cannot be < 0.");
+        }
+        if (maxPlayers <= 0) {
+            throw new IllegalArgumentException("maxPlayers cannot be <= 0.");
+        }
+
+        return ImmutableMap.copyOf(internalApi.getLinkedPlayers(uuid, maxDepth, maxPlayers));
+    }
 }
@@ -0,0 +1,30 @@
+package me.egg82.altfinder.core;
+
+import java.util.Set;
+
+public class DumpPage<T> {
+    private final Set<T> values;
+    private final long lastID;
+    private final int rows;
+
+    public DumpPage(Set<T> values, long lastID, int rows) {
+        this.values = values;
+        this.lastID = lastID;
+        this.rows = rows;
+    }
+
+    public Set<T> getValues() { return values; }
+
+    /**
+     * The highest ID read in this page, including rows that were skipped as invalid.
+     * Pass it back as afterID to fetch the next page.
+     */
+    public long getLastID() { return lastID; }
+
+    /**
+     * The number of rows read from storage, which may be more than getValues().size() if rows were skipped.
+     */
+    public int getRows() { return rows; }
+
+    public boolean isLast(int size) { return rows < size; }
+}
@@ -0,0 +1,42 @@
+package me.egg82.altfinder.core;
+
+import java.util.Objects;
+import java.util.UUID;
+
+public class LoginRecord {
+    private final UUID playerID;
+    private final String ip;
+    private final String server;
+    private final long time;
+
+    private final int hc;
+
+    public LoginRecord(UUID playerID, String ip, String server, long time) {
+        this.playerID = playerID;
+        this.ip = ip;
+        this.server = server;
+        this.time = time;
+
+        hc = Objects.hash(playerID, ip, server, time);
+    }
+
+    public UUID getPlayerID() { return playerID; }
+
+    public String getIP() { return ip; }
+
+    public String getServer() { return server; }
+
+    public long getTime() { return time; }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LoginRecord)) return false;
+        LoginRecord that = (LoginRecord) o;
+        return time == that.time &&
+                playerID.equals(that.playerID) &&
+                ip.equals(that.ip) &&
+                server.equals(that.server);
+    }
+
+    public int hashCode() { return hc; }
+}
@@ -0,0 +1,17 @@
+package me.egg82.altfinder.core;
+
+import java.util.Set;
+
+public class QueuePage<T> extends DumpPage<T> {
+    private final long lastUpdated;
+
+    public QueuePage(Set<T> values, long lastUpdated, long lastID, int rows) {
+        super(values, lastID, rows);
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * The updated time of the last row read in this page. Pass it back with getLastID() to fetch the next page.
+     */
+    public long getLastUpdated() { return lastUpdated; }
+}
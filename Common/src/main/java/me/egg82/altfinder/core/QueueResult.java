@@ -0,0 +1,25 @@
+package me.egg82.altfinder.core;
+
+import java.util.UUID;
+
+/**
+ * An alt read from the queue, along with the storage IDs of its IP, player and server.
+ */
+public class QueueResult extends AltResult {
+    private final long longIPID;
+    private final long longPlayerID;
+    private final long longServerID;
+
+    public QueueResult(long id, String ip, UUID playerID, UUID serverID, String serverName, long count, long created, long updated, long longIPID, long longPlayerID, long longServerID) {
+        super(id, ip, playerID, serverID, serverName, count, created, updated);
+        this.longIPID = longIPID;
+        this.longPlayerID = longPlayerID;
+        this.longServerID = longServerID;
+    }
+
+    public long getLongIPID() { return longIPID; }
+
+    public long getLongPlayerID() { return longPlayerID; }
+
+    public long getLongServerID() { return longServerID; }
+}
@@ -1,10 +1,18 @@
 package me.egg82.altfinder.extended;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import me.egg82.altfinder.messaging.Messaging;
+import me.egg82.altfinder.services.AltGraph;
+import me.egg82.altfinder.services.AltLookupCache;
+import me.egg82.altfinder.services.ChangeFeed;
+import me.egg82.altfinder.services.DeduplicatingMessagingHandler;
+import me.egg82.altfinder.services.StorageReader;
+import me.egg82.altfinder.services.StorageWriter;
 import me.egg82.altfinder.storage.Storage;
 
 public class CachedConfigValues {
@@ -13,9 +21,33 @@ public class CachedConfigValues {
     private ImmutableList<Storage> storage = ImmutableList.of();
     public ImmutableList<Storage> getStorage() { return storage; }
 
+    private ImmutableMap<String, Storage> storageByName = ImmutableMap.of();
+    /**
+     * Storage engines keyed by their lowercase key under storage.engines.
+     */
+    public ImmutableMap<String, Storage> getStorageByName() { return storageByName; }
+
     private ImmutableList<Messaging> messaging = ImmutableList.of();
     public ImmutableList<Messaging> getMessaging() { return messaging; }
 
+    private DeduplicatingMessagingHandler dedupe = null;
+    public DeduplicatingMessagingHandler getDedupe() { return dedupe; }
+
+    private AltLookupCache cache = null;
+    public AltLookupCache getCache() { return cache; }
+
+    private AltGraph graph = null;
+    public AltGraph getGraph() { return graph; }
+
+    private ChangeFeed changeFeed = null;
+    public ChangeFeed getChangeFeed() { return changeFeed; }
+
+    private StorageReader reader = null;
+    public StorageReader getReader() { return reader; }
+
+    private StorageWriter writer = null;
+    public StorageWriter getWriter() { return writer; }
+
     private boolean debug = false;
     public boolean getDebug() { return debug; }
 
@@ -51,8 +83,12 @@ public class CachedConfigValues {
             return this;
         }
 
-        public CachedConfigValues.Builder storage(List<Storage> value) {
-            values.storage = ImmutableList.copyOf(value);
+        /**
+         * @param value engines in storage order, keyed by their lowercase key under storage.engines
+         */
+        public CachedConfigValues.Builder storage(Map<String, Storage> value) {
+            values.storage = ImmutableList.copyOf(value.values());
+            values.storageByName = ImmutableMap.copyOf(value);
             return this;
         }
 
@@ -61,6 +97,36 @@ public class CachedConfigValues {
             return this;
         }
 
+        public CachedConfigValues.Builder dedupe(DeduplicatingMessagingHandler value) {
+            values.dedupe = value;
+            return this;
+        }
+
+        public CachedConfigValues.Builder cache(AltLookupCache value) {
+            values.cache = value;
+            return this;
+        }
+
+        public CachedConfigValues.Builder graph(AltGraph value) {
+            values.graph = value;
+            return this;
+        }
+
+        public CachedConfigValues.Builder changeFeed(ChangeFeed value) {
+            values.changeFeed = value;
+            return this;
+        }
+
+        public CachedConfigValues.Builder reader(StorageReader value) {
+            values.reader = value;
+            return this;
+        }
+
+        public CachedConfigValues.Builder writer(StorageWriter value) {
+            values.writer = value;
+            return this;
+        }
+
         public CachedConfigValues.Builder totalKickMessage(String value) {
             if (value == null) {
                 throw new IllegalArgumentException("value cannot be null.");
@@ -1,6 +1,9 @@
 package me.egg82.altfinder.extended;
 
-import java.util.UUID;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import me.egg82.altfinder.APIException;
 import me.egg82.altfinder.core.PlayerData;
 import me.egg82.altfinder.services.InternalAPI;
@@ -16,58 +19,245 @@ import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPubSub;
 import redis.clients.jedis.exceptions.JedisException;
 
+/**
+ * Subscribes to Redis on its own thread, reconnecting with exponential backoff whenever the subscription drops.
+ * Messages are only queued on the subscriber thread; parsing and storage writes happen on a single worker
+ * which drains the queue in batches, so a slow database never stalls pub/sub delivery.
+ * There is only one worker so messages are applied in the order they arrived: an add touches both a UUID
+ * and an IP, so no split by key could keep it ordered against deletes of either.
+ * When the queue is full, new messages are dropped and counted.
+ */
 public class RedisSubscriber {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    public RedisSubscriber() {
-        try (Jedis redis = RedisUtil.getRedis()) {
-            if (redis == null) {
+    private static final long MIN_BACKOFF = 500L;
+    private static final long MAX_BACKOFF = 30000L;
+
+    private final BlockingQueue<Message> queue;
+    private final int batchSize;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("AltFinder-RedisWorker-%d").setDaemon(true).build());
+    private final Thread subscriberThread;
+
+    private volatile Subscriber subscriber = null;
+    private volatile boolean closed = false;
+
+    private final AtomicLong received = new AtomicLong(0L);
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private final AtomicLong reconnects = new AtomicLong(0L);
+
+    public RedisSubscriber() { this(10000, 100); }
+
+    /**
+     * @param queueSize the number of messages which can wait for the worker before new ones are dropped
+     * @param batchSize the most messages the worker takes from the queue at once
+     */
+    public RedisSubscriber(int queueSize, int batchSize) {
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize cannot be <= 0.");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize cannot be <= 0.");
+        }
+
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+
+        worker.execute(this::work);
+
+        subscriberThread = new ThreadFactoryBuilder().setNameFormat("AltFinder-RedisSubscriber-%d").setDaemon(true).build().newThread(this::subscribe);
+        subscriberThread.start();
+    }
+
+    public int getQueueDepth() { return queue.size(); }
+
+    public long getReceived() { return received.get(); }
+
+    public long getDropped() { return dropped.get(); }
+
+    public long getReconnects() { return reconnects.get(); }
+
+    /**
+     * Unsubscribes, then gives the worker a few seconds to apply what's left in the queue.
+     */
+    public void close() {
+        closed = true;
+
+        Subscriber s = subscriber;
+        if (s != null && s.isSubscribed()) {
+            try {
+                s.unsubscribe();
+            } catch (JedisException ignored) { }
+        }
+        subscriberThread.interrupt();
+
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(5L, TimeUnit.SECONDS)) {
+                logger.warn("Redis subscriber closed with " + queue.size() + " messages still queued.");
+                worker.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            worker.shutdownNow();
+        }
+    }
+
+    private void subscribe() {
+        long backoff = MIN_BACKOFF;
+        while (!closed) {
+            long start = System.currentTimeMillis();
+            try (Jedis redis = RedisUtil.getRedis()) {
+                if (redis == null) {
+                    // Redis isn't enabled
+                    return;
+                }
+
+                Subscriber s = new Subscriber();
+                subscriber = s;
+                if (closed) {
+                    return;
+                }
+                // Blocks until unsubscribed or the connection drops
+                redis.subscribe(s, "altfndr-info", "altfndr-delete");
+            } catch (JedisException ex) {
+                if (!closed) {
+                    logger.warn("Redis subscription dropped: " + ex.getMessage());
+                }
+            }
+
+            if (closed) {
                 return;
             }
 
-            redis.subscribe(new Subscriber(), "altfndr-info", "altfndr-delete");
-        } catch (JedisException ex) {
-            logger.error(ex.getMessage(), ex);
+            if (System.currentTimeMillis() - start > MAX_BACKOFF) {
+                // Was up for a while, so this isn't a connect loop
+                backoff = MIN_BACKOFF;
+            }
+            logger.info("Reconnecting to Redis in " + backoff + "ms.");
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoff = Math.min(backoff * 2L, MAX_BACKOFF);
+            reconnects.incrementAndGet();
         }
     }
 
-    class Subscriber extends JedisPubSub {
-        private Subscriber() { super(); }
+    private void work() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(1L, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                apply(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                // Don't let one bad batch kill the worker
+                logger.error(ex.getMessage(), ex);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
 
-        public void onMessage(String channel, String message) {
-            if (channel.equals("altfndr-info")) {
-                try {
-                    JSONObject obj = JSONUtil.parseObject(message);
-                    UUID uuid = UUID.fromString((String) obj.get("uuid"));
-                    String ip = (String) obj.get("ip");
-                    long count = ((Number) obj.get("count")).longValue();
-                    String server = (String) obj.get("server");
-                    long created = ((Number) obj.get("created")).longValue();
-                    long updated = ((Number) obj.get("updated")).longValue();
-                    UUID id = UUID.fromString((String) obj.get("id"));
-
-                    if (!ValidationUtil.isValidIp(ip)) {
-                        logger.warn("non-valid IP sent through Redis pub/sub");
-                        return;
-                    }
-
-                    if (id.equals(Redis.getServerID())) {
-                        logger.info("ignoring message sent from this server");
-                        return;
-                    }
-
-                    InternalAPI.add(new PlayerData(uuid, ip, count, server, created, updated));
-                } catch (APIException | ParseException | ClassCastException | NullPointerException ex) {
-                    logger.error(ex.getMessage(), ex);
+    private void apply(List<Message> batch) {
+        // Only the newest info for each uuid|ip in a batch needs writing
+        Map<String, PlayerData> adds = new LinkedHashMap<>();
+        for (Message message : batch) {
+            if (message.channel.equals("altfndr-info")) {
+                PlayerData data = parseInfo(message.message);
+                if (data != null) {
+                    adds.put(data.getUUID() + "|" + data.getIP(), data);
                 }
-            } else if (channel.equals("altfndr-delete")) {
-                // In this case, the message is the "IP"
+            } else if (message.channel.equals("altfndr-delete")) {
+                // Anything before the delete has to be applied before it
+                applyAdds(adds);
+                adds.clear();
+
+                // In this case, the message is the "IP" or "UUID"
                 try {
-                    InternalAPI.delete(message);
+                    InternalAPI.delete(message.message);
                 } catch (APIException ex) {
                     logger.error(ex.getMessage(), ex);
                 }
             }
         }
+        applyAdds(adds);
+    }
+
+    private void applyAdds(Map<String, PlayerData> adds) {
+        for (PlayerData data : adds.values()) {
+            try {
+                InternalAPI.add(data);
+            } catch (APIException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private PlayerData parseInfo(String message) {
+        try {
+            JSONObject obj = JSONUtil.parseObject(message);
+            UUID uuid = UUID.fromString((String) obj.get("uuid"));
+            String ip = (String) obj.get("ip");
+            long count = ((Number) obj.get("count")).longValue();
+            String server = (String) obj.get("server");
+            long created = ((Number) obj.get("created")).longValue();
+            long updated = ((Number) obj.get("updated")).longValue();
+            UUID id = UUID.fromString((String) obj.get("id"));
+
+            if (!ValidationUtil.isValidIp(ip)) {
+                logger.warn("non-valid IP sent through Redis pub/sub");
+                return null;
+            }
+
+            if (id.equals(Redis.getServerID())) {
+                return null;
+            }
+
+            return new PlayerData(uuid, ip, count, server, created, updated);
+        } catch (ParseException | ClassCastException | NullPointerException | IllegalArgumentException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        return null;
+    }
+
+    private static class Message {
+        private final String channel;
+        private final String message;
+
+        private Message(String channel, String message) {
+            this.channel = channel;
+            this.message = message;
+        }
+    }
+
+    class Subscriber extends JedisPubSub {
+        private Subscriber() { super(); }
+
+        public void onSubscribe(String channel, int subscribedChannels) {
+            // close() ran before the subscription went through, so it couldn't unsubscribe
+            if (closed) {
+                unsubscribe();
+            }
+        }
+
+        public void onMessage(String channel, String message) {
+            received.incrementAndGet();
+            if (!queue.offer(new Message(channel, message))) {
+                long d = dropped.incrementAndGet();
+                if (d == 1L || d % 1000L == 0L) {
+                    logger.warn("Redis subscriber queue is full, " + d + " messages dropped so far.");
+                }
+            }
+        }
     }
 }
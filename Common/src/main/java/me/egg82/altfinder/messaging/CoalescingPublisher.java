@@ -0,0 +1,157 @@
+package me.egg82.altfinder.messaging;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers outgoing messages for a short window and sends them to the sink as a single batch frame,
+ * so a burst of logins costs one publish rather than one per login.
+ * A frame is sent when the window expires or maxMessages are waiting, whichever comes first.
+ * Frames are sent in order from a single thread; failures are logged and counted, not retried.
+ */
+public class CoalescingPublisher implements Messaging {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public interface Sink {
+        void send(byte[] frame) throws MessagingException;
+    }
+
+    private final MessageCodec codec;
+    private final Sink sink;
+    private final int maxMessages;
+    private final long window;
+
+    private final ScheduledExecutorService executor;
+    private final Object lock = new Object();
+    private List<byte[]> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduled = null;
+    private volatile boolean closed = false;
+
+    private final AtomicLong sentFrames = new AtomicLong(0L);
+    private final AtomicLong sentMessages = new AtomicLong(0L);
+    private final AtomicLong failedFrames = new AtomicLong(0L);
+
+    public CoalescingPublisher(String name, MessageCodec codec, Sink sink, int maxMessages, long window, TimeUnit unit) {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec cannot be null.");
+        }
+        if (sink == null) {
+            throw new IllegalArgumentException("sink cannot be null.");
+        }
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("maxMessages cannot be <= 0.");
+        }
+        if (window < 0L) {
+            throw new IllegalArgumentException("window cannot be < 0.");
+        }
+
+        this.codec = codec;
+        this.sink = sink;
+        this.maxMessages = maxMessages;
+        this.window = unit.toMillis(window);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("AltFinder-Publisher-" + name + "-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Sends anything still buffered and stops the publisher.
+     */
+    public void close() {
+        // Closed under the lock, so no message can be added after the final drain
+        synchronized (lock) {
+            closed = true;
+            if (!pending.isEmpty()) {
+                submit(take());
+            }
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5L, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isClosed() { return closed; }
+
+    public void sendServer(UUID messageID, long longServerID, UUID serverID, String name) throws MessagingException { enqueue(codec.encodeServer(messageID, longServerID, serverID, name)); }
+
+    public void sendIP(UUID messageID, long longIPID, String ip) throws MessagingException { enqueue(codec.encodeIP(messageID, longIPID, ip)); }
+
+    public void sendPlayer(UUID messageID, long longPlayerID, UUID playerID) throws MessagingException { enqueue(codec.encodePlayer(messageID, longPlayerID, playerID)); }
+
+    public void sendPost(UUID messageID, long id, long longIPID, String ip, long longPlayerID, UUID playerID, long longServerID, UUID serverID, String serverName, long count, long created, long updated) throws MessagingException {
+        enqueue(codec.encodePost(messageID, id, longIPID, ip, longPlayerID, playerID, longServerID, serverID, serverName, count, created, updated));
+    }
+
+    public long getSentFrames() { return sentFrames.get(); }
+
+    public long getSentMessages() { return sentMessages.get(); }
+
+    public long getFailedFrames() { return failedFrames.get(); }
+
+    private void enqueue(byte[] message) throws MessagingException {
+        synchronized (lock) {
+            if (closed) {
+                throw new MessagingException(false, "Publisher is closed.");
+            }
+
+            pending.add(message);
+            if (pending.size() >= maxMessages) {
+                submit(take());
+            } else if (scheduled == null) {
+                try {
+                    scheduled = executor.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ex) {
+                    throw new MessagingException(false, "Publisher is closed.", ex);
+                }
+            }
+        }
+    }
+
+    private void flush() {
+        synchronized (lock) {
+            if (!pending.isEmpty()) {
+                submit(take());
+            }
+        }
+    }
+
+    private List<byte[]> take() {
+        List<byte[]> retVal = pending;
+        pending = new ArrayList<>();
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+        return retVal;
+    }
+
+    private void submit(List<byte[]> messages) {
+        try {
+            executor.execute(() -> send(messages));
+        } catch (RejectedExecutionException ex) {
+            // Closing, send on this thread rather than drop the frame
+            send(messages);
+        }
+    }
+
+    private void send(List<byte[]> messages) {
+        try {
+            sink.send(codec.encodeBatch(messages));
+            sentFrames.incrementAndGet();
+            sentMessages.addAndGet(messages.size());
+        } catch (MessagingException | RuntimeException ex) {
+            failedFrames.incrementAndGet();
+            logger.error("Could not send " + messages.size() + " messages: " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package me.egg82.altfinder.messaging;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import me.egg82.altfinder.services.MessagingHandler;
+import ninja.egg82.json.JSONUtil;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Wire format shared by every Messaging implementation.
+ *
+ * Binary messages start with a version byte and a type byte, followed by the fields in the order
+ * they're passed to the send* methods. UUIDs are two longs, strings (IPs included) are a varint length and
+ * UTF-8 bytes, and IDs, counts and timestamps are varints. IPs are sent as written rather than packed, since
+ * storage looks them up by their exact text.
+ *
+ * A batch frame holds a varint record count, then each record as a varint length and a complete message.
+ *
+ * JSON messages (anything starting with '{') are always accepted, so servers writing JSON and
+ * servers writing binary can share a network while it's being upgraded.
+ */
+public class MessageCodec {
+    public enum Format {
+        BINARY,
+        JSON
+    }
+
+    // 2: IPs are strings rather than packed bytes
+    private static final byte VERSION = 2;
+
+    private static final byte TYPE_SERVER = 1;
+    private static final byte TYPE_IP = 2;
+    private static final byte TYPE_PLAYER = 3;
+    private static final byte TYPE_POST = 4;
+    private static final byte TYPE_BATCH = 5;
+
+    private final Format format;
+
+    public MessageCodec(Format format) {
+        if (format == null) {
+            throw new IllegalArgumentException("format cannot be null.");
+        }
+        this.format = format;
+    }
+
+    public Format getFormat() { return format; }
+
+    public byte[] encodeServer(UUID messageID, long longServerID, UUID serverID, String name) {
+        if (format == Format.JSON) {
+            JSONObject obj = jsonHeader("server", messageID);
+            obj.put("longServerID", longServerID);
+            obj.put("serverID", serverID.toString());
+            obj.put("name", name);
+            return obj.toJSONString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        Writer writer = new Writer(TYPE_SERVER, messageID);
+        writer.writeVarLong(longServerID);
+        writer.writeUUID(serverID);
+        writer.writeString(name);
+        return writer.toByteArray();
+    }
+
+    public byte[] encodeIP(UUID messageID, long longIPID, String ip) {
+        if (format == Format.JSON) {
+            JSONObject obj = jsonHeader("ip", messageID);
+            obj.put("longIPID", longIPID);
+            obj.put("ip", ip);
+            return obj.toJSONString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        Writer writer = new Writer(TYPE_IP, messageID);
+        writer.writeVarLong(longIPID);
+        writer.writeString(ip);
+        return writer.toByteArray();
+    }
+
+    public byte[] encodePlayer(UUID messageID, long longPlayerID, UUID playerID) {
+        if (format == Format.JSON) {
+            JSONObject obj = jsonHeader("player", messageID);
+            obj.put("longPlayerID", longPlayerID);
+            obj.put("playerID", playerID.toString());
+            return obj.toJSONString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        Writer writer = new Writer(TYPE_PLAYER, messageID);
+        writer.writeVarLong(longPlayerID);
+        writer.writeUUID(playerID);
+        return writer.toByteArray();
+    }
+
+    public byte[] encodePost(UUID messageID, long id, long longIPID, String ip, long longPlayerID, UUID playerID, long longServerID, UUID serverID, String serverName, long count, long created, long updated) {
+        if (format == Format.JSON) {
+            JSONObject obj = jsonHeader("post", messageID);
+            obj.put("id", id);
+            obj.put("longIPID", longIPID);
+            obj.put("ip", ip);
+            obj.put("longPlayerID", longPlayerID);
+            obj.put("playerID", playerID.toString());
+            obj.put("longServerID", longServerID);
+            obj.put("serverID", serverID.toString());
+            obj.put("serverName", serverName);
+            obj.put("count", count);
+            obj.put("created", created);
+            obj.put("updated", updated);
+            return obj.toJSONString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        Writer writer = new Writer(TYPE_POST, messageID);
+        writer.writeVarLong(id);
+        writer.writeVarLong(longIPID);
+        writer.writeString(ip);
+        writer.writeVarLong(longPlayerID);
+        writer.writeUUID(playerID);
+        writer.writeVarLong(longServerID);
+        writer.writeUUID(serverID);
+        writer.writeString(serverName);
+        writer.writeVarLong(count);
+        writer.writeVarLong(created);
+        writer.writeVarLong(updated);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Wraps already-encoded messages into one frame. A single message is returned as-is.
+     */
+    public byte[] encodeBatch(List<byte[]> messages) {
+        if (messages == null || messages.isEmpty()) {
+            throw new IllegalArgumentException("messages cannot be null or empty.");
+        }
+        if (messages.size() == 1) {
+            return messages.get(0);
+        }
+
+        if (format == Format.JSON) {
+            StringBuilder builder = new StringBuilder("{\"type\":\"batch\",\"messages\":[");
+            for (int i = 0; i < messages.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(new String(messages.get(i), StandardCharsets.UTF_8));
+            }
+            builder.append("]}");
+            return builder.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        Writer writer = new Writer(TYPE_BATCH);
+        writer.writeVarLong(messages.size());
+        for (byte[] message : messages) {
+            writer.writeBytes(message);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes a binary or JSON message and passes it to the matching handler callback.
+     * Batch frames call the handler once per message.
+     */
+    public static void decode(byte[] data, Messaging callingMessaging, MessagingHandler handler) throws MessagingException {
+        if (data == null || data.length == 0) {
+            throw new MessagingException(false, "Message is empty.");
+        }
+
+        if (data[0] == '{') {
+            decodeJSON(new String(data, StandardCharsets.UTF_8), callingMessaging, handler);
+        } else {
+            decodeBinary(ByteBuffer.wrap(data), callingMessaging, handler);
+        }
+    }
+
+    private static void decodeBinary(ByteBuffer buffer, Messaging callingMessaging, MessagingHandler handler) throws MessagingException {
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new MessagingException(false, "Unsupported message version " + version + ".");
+            }
+
+            byte type = buffer.get();
+            if (type == TYPE_BATCH) {
+                long count = readVarLong(buffer);
+                for (long i = 0L; i < count; i++) {
+                    long length = readVarLong(buffer);
+                    if (length <= 0L || length > buffer.remaining()) {
+                        throw new MessagingException(false, "Batched message length " + length + " is invalid.");
+                    }
+                    ByteBuffer message = buffer.slice();
+                    message.limit((int) length);
+                    buffer.position(buffer.position() + (int) length);
+                    if (length > 1L && message.get(1) == TYPE_BATCH) {
+                        throw new MessagingException(false, "Batches cannot be nested.");
+                    }
+                    decodeBinary(message, callingMessaging, handler);
+                }
+                return;
+            }
+
+            UUID messageID = readUUID(buffer);
+            switch (type) {
+                case TYPE_SERVER: {
+                    long longServerID = readVarLong(buffer);
+                    UUID serverID = readUUID(buffer);
+                    String name = readString(buffer);
+                    handler.serverCallback(messageID, longServerID, serverID, name, callingMessaging);
+                    break;
+                }
+                case TYPE_IP: {
+                    long longIPID = readVarLong(buffer);
+                    String ip = readString(buffer);
+                    handler.ipCallback(messageID, ip, longIPID, callingMessaging);
+                    break;
+                }
+                case TYPE_PLAYER: {
+                    long longPlayerID = readVarLong(buffer);
+                    UUID playerID = readUUID(buffer);
+                    handler.playerCallback(messageID, playerID, longPlayerID, callingMessaging);
+                    break;
+                }
+                case TYPE_POST: {
+                    long id = readVarLong(buffer);
+                    long longIPID = readVarLong(buffer);
+                    String ip = readString(buffer);
+                    long longPlayerID = readVarLong(buffer);
+                    UUID playerID = readUUID(buffer);
+                    long longServerID = readVarLong(buffer);
+                    UUID serverID = readUUID(buffer);
+                    String serverName = readString(buffer);
+                    long count = readVarLong(buffer);
+                    long created = readVarLong(buffer);
+                    long updated = readVarLong(buffer);
+                    handler.postCallback(messageID, id, longIPID, ip, longPlayerID, playerID, longServerID, serverID, serverName, count, created, updated, callingMessaging);
+                    break;
+                }
+                default:
+                    throw new MessagingException(false, "Unknown message type " + type + ".");
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new MessagingException(false, "Message is truncated.", ex);
+        }
+    }
+
+    private static void decodeJSON(String json, Messaging callingMessaging, MessagingHandler handler) throws MessagingException {
+        JSONObject obj;
+        try {
+            obj = JSONUtil.parseObject(json);
+        } catch (ParseException | ClassCastException ex) {
+            throw new MessagingException(false, "Message is not valid JSON.", ex);
+        }
+
+        if ("batch".equals(obj.get("type"))) {
+            Object messages = obj.get("messages");
+            if (!(messages instanceof JSONArray)) {
+                throw new MessagingException(false, "Batch has no messages.");
+            }
+            for (Object message : (JSONArray) messages) {
+                if (!(message instanceof JSONObject)) {
+                    throw new MessagingException(false, "Batched message is not an object.");
+                }
+                decodeJSON((JSONObject) message, callingMessaging, handler);
+            }
+            return;
+        }
+        decodeJSON(obj, callingMessaging, handler);
+    }
+
+    private static void decodeJSON(JSONObject obj, Messaging callingMessaging, MessagingHandler handler) throws MessagingException {
+        try {
+            UUID messageID = UUID.fromString((String) obj.get("messageID"));
+            String type = (String) obj.get("type");
+            if ("server".equals(type)) {
+                handler.serverCallback(
+                        messageID,
+                        ((Number) obj.get("longServerID")).longValue(),
+                        UUID.fromString((String) obj.get("serverID")),
+                        (String) obj.get("name"),
+                        callingMessaging
+                );
+            } else if ("ip".equals(type)) {
+                handler.ipCallback(
+                        messageID,
+                        (String) obj.get("ip"),
+                        ((Number) obj.get("longIPID")).longValue(),
+                        callingMessaging
+                );
+            } else if ("player".equals(type)) {
+                handler.playerCallback(
+                        messageID,
+                        UUID.fromString((String) obj.get("playerID")),
+                        ((Number) obj.get("longPlayerID")).longValue(),
+                        callingMessaging
+                );
+            } else if ("post".equals(type)) {
+                handler.postCallback(
+                        messageID,
+                        ((Number) obj.get("id")).longValue(),
+                        ((Number) obj.get("longIPID")).longValue(),
+                        (String) obj.get("ip"),
+                        ((Number) obj.get("longPlayerID")).longValue(),
+                        UUID.fromString((String) obj.get("playerID")),
+                        ((Number) obj.get("longServerID")).longValue(),
+                        UUID.fromString((String) obj.get("serverID")),
+                        (String) obj.get("serverName"),
+                        ((Number) obj.get("count")).longValue(),
+                        ((Number) obj.get("created")).longValue(),
+                        ((Number) obj.get("updated")).longValue(),
+                        callingMessaging
+                );
+            } else {
+                throw new MessagingException(false, "Unknown message type \"" + type + "\".");
+            }
+        } catch (ClassCastException | NullPointerException | IllegalArgumentException ex) {
+            throw new MessagingException(false, "Message is missing fields or has invalid ones.", ex);
+        }
+    }
+
+    private static JSONObject jsonHeader(String type, UUID messageID) {
+        JSONObject obj = new JSONObject();
+        obj.put("type", type);
+        obj.put("messageID", messageID.toString());
+        return obj;
+    }
+
+    private static UUID readUUID(ByteBuffer buffer) { return new UUID(buffer.getLong(), buffer.getLong()); }
+
+    private static long readVarLong(ByteBuffer buffer) throws MessagingException {
+        long retVal = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            retVal |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return retVal;
+            }
+        }
+        throw new MessagingException(false, "Varint is too long.");
+    }
+
+    private static String readString(ByteBuffer buffer) throws MessagingException {
+        long length = readVarLong(buffer);
+        if (length < 0L || length > buffer.remaining()) {
+            throw new MessagingException(false, "String length " + length + " is invalid.");
+        }
+        byte[] bytes = new byte[(int) length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Writer {
+        private byte[] buffer = new byte[64];
+        private int position = 0;
+
+        private Writer(byte type) {
+            writeByte(VERSION);
+            writeByte(type);
+        }
+
+        private Writer(byte type, UUID messageID) {
+            this(type);
+            writeUUID(messageID);
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeLong(long value) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buffer[position++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0L) {
+                writeByte((int) ((value & 0x7FL) | 0x80L));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        private void writeUUID(UUID value) {
+            writeLong(value.getMostSignificantBits());
+            writeLong(value.getLeastSignificantBits());
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void writeBytes(byte[] value) {
+            writeVarLong(value.length);
+            ensure(value.length);
+            System.arraycopy(value, 0, buffer, position, value.length);
+            position += value.length;
+        }
+
+        private void ensure(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+
+        private byte[] toByteArray() { return Arrays.copyOf(buffer, position); }
+    }
+}
@@ -0,0 +1,346 @@
+package me.egg82.altfinder.messaging;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rabbitmq.client.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import me.egg82.altfinder.services.MessagingHandler;
+import me.egg82.altfinder.utils.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RabbitMQ messaging engine.
+ * One long-lived, auto-recovering connection is shared by a small pool of publishing channels.
+ * The exchange is declared once at build time (and re-declared by topology recovery), and
+ * publisher confirms are tracked asynchronously so a publish never waits on the broker.
+ * Received frames are applied on a single worker rather than the connection's consumer thread,
+ * so a slow database never holds up delivery. When the worker falls too far behind, frames are dropped and counted.
+ *
+ * This engine uses its own altfndr-data exchange and binary frames. It doesn't replace the legacy
+ * altfndr-info and altfndr-delete exchanges used by services.RabbitMQ, which still carry cache updates
+ * and deletes between every server. During an upgrade, servers on older versions keep receiving those.
+ * Only upgraded servers with this engine enabled exchange storage writes over altfndr-data.
+ */
+public class RabbitMQ implements Messaging {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String EXCHANGE = "altfndr-data";
+
+    private final ConnectionFactory factory = new ConnectionFactory();
+    private Connection connection;
+    private Channel consumeChannel;
+    private BlockingQueue<PooledChannel> channels;
+    private final List<PooledChannel> allChannels = new ArrayList<>();
+    private int channelCount = 2;
+
+    private UUID serverID;
+    private MessagingHandler handler;
+    private MessageCodec codec = new MessageCodec(MessageCodec.Format.BINARY);
+    private CoalescingPublisher publisher;
+    private int batchSize = 100;
+    private long batchWindow = 5L;
+    private int queueSize = 10000;
+    private ExecutorService worker;
+
+    private final AtomicLong nacked = new AtomicLong(0L);
+    private final AtomicLong lost = new AtomicLong(0L);
+    private final AtomicLong dropped = new AtomicLong(0L);
+
+    private RabbitMQ() { }
+
+    private volatile boolean closed = false;
+
+    public void close() {
+        closed = true;
+        if (publisher != null) {
+            publisher.close();
+        }
+        try {
+            connection.close();
+        } catch (IOException | AlreadyClosedException ignored) { }
+
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(5L, TimeUnit.SECONDS)) {
+                worker.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            worker.shutdownNow();
+        }
+    }
+
+    public boolean isClosed() { return closed; }
+
+    public static RabbitMQ.Builder builder(UUID serverID, MessagingHandler handler) { return new RabbitMQ.Builder(serverID, handler); }
+
+    public static class Builder {
+        private final RabbitMQ result = new RabbitMQ();
+
+        private Builder(UUID serverID, MessagingHandler handler) {
+            if (serverID == null) {
+                throw new IllegalArgumentException("serverID cannot be null.");
+            }
+            if (handler == null) {
+                throw new IllegalArgumentException("handler cannot be null.");
+            }
+
+            result.serverID = serverID;
+            result.handler = handler;
+
+            result.factory.setAutomaticRecoveryEnabled(true);
+            result.factory.setTopologyRecoveryEnabled(true);
+            result.factory.setNetworkRecoveryInterval(5000L);
+            result.factory.setRequestedHeartbeat(30);
+            result.factory.setConnectionTimeout(5000);
+        }
+
+        public RabbitMQ.Builder url(String address, int port, String vHost) {
+            result.factory.setHost(address);
+            result.factory.setPort(port);
+            result.factory.setVirtualHost(vHost);
+            return this;
+        }
+
+        public RabbitMQ.Builder credentials(String user, String pass) {
+            result.factory.setUsername(user);
+            result.factory.setPassword(pass);
+            return this;
+        }
+
+        public RabbitMQ.Builder timeout(int timeout) {
+            result.factory.setConnectionTimeout(timeout);
+            return this;
+        }
+
+        public RabbitMQ.Builder channels(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+            result.channelCount = value;
+            return this;
+        }
+
+        public RabbitMQ.Builder format(MessageCodec.Format value) {
+            result.codec = new MessageCodec(value);
+            return this;
+        }
+
+        /**
+         * Outgoing messages are coalesced into frames of up to maxMessages, waiting at most maxDelayMillis.
+         */
+        public RabbitMQ.Builder batch(int maxMessages, long maxDelayMillis) {
+            if (maxMessages <= 0) {
+                throw new IllegalArgumentException("maxMessages cannot be <= 0.");
+            }
+            if (maxDelayMillis < 0L) {
+                throw new IllegalArgumentException("maxDelayMillis cannot be < 0.");
+            }
+            result.batchSize = maxMessages;
+            result.batchWindow = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * The number of received frames which can wait to be applied before new ones are dropped.
+         */
+        public RabbitMQ.Builder queueSize(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+            result.queueSize = value;
+            return this;
+        }
+
+        public RabbitMQ build() throws MessagingException {
+            // One thread, so frames are applied in the order they arrived
+            result.worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(result.queueSize), new ThreadFactoryBuilder().setNameFormat("AltFinder-RabbitWorker-%d").setDaemon(true).build());
+
+            try {
+                result.connection = result.factory.newConnection("AltFinder-" + result.serverID);
+                if (result.connection instanceof Recoverable) {
+                    ((Recoverable) result.connection).addRecoveryListener(result.new ConfirmRecoveryListener());
+                }
+
+                // Declared once here, topology recovery re-declares them after a reconnect
+                result.consumeChannel = result.connection.createChannel();
+                result.consumeChannel.exchangeDeclare(EXCHANGE, BuiltinExchangeType.FANOUT, true);
+                String queue = result.consumeChannel.queueDeclare().getQueue();
+                result.consumeChannel.queueBind(queue, EXCHANGE, "");
+                result.consumeChannel.basicConsume(queue, true, result.new FrameConsumer(result.consumeChannel));
+
+                result.channels = new ArrayBlockingQueue<>(result.channelCount);
+                for (int i = 0; i < result.channelCount; i++) {
+                    PooledChannel channel = result.new PooledChannel(result.connection.createChannel());
+                    result.allChannels.add(channel);
+                    result.channels.add(channel);
+                }
+            } catch (IOException | TimeoutException ex) {
+                if (result.connection != null) {
+                    try {
+                        result.connection.close();
+                    } catch (IOException | AlreadyClosedException ignored) { }
+                }
+                result.worker.shutdownNow();
+                throw new MessagingException(true, "Could not connect to RabbitMQ.", ex);
+            }
+
+            result.publisher = new CoalescingPublisher("RabbitMQ", result.codec, result::publish, result.batchSize, result.batchWindow, TimeUnit.MILLISECONDS);
+            return result;
+        }
+    }
+
+    public void sendServer(UUID messageID, long longServerID, UUID serverID, String name) throws MessagingException { publisher.sendServer(messageID, longServerID, serverID, name); }
+
+    public void sendIP(UUID messageID, long longIPID, String ip) throws MessagingException { publisher.sendIP(messageID, longIPID, ip); }
+
+    public void sendPlayer(UUID messageID, long longPlayerID, UUID playerID) throws MessagingException { publisher.sendPlayer(messageID, longPlayerID, playerID); }
+
+    public void sendPost(UUID messageID, long id, long longIPID, String ip, long longPlayerID, UUID playerID, long longServerID, UUID serverID, String serverName, long count, long created, long updated) throws MessagingException {
+        publisher.sendPost(messageID, id, longIPID, ip, longPlayerID, playerID, longServerID, serverID, serverName, count, created, updated);
+    }
+
+    /**
+     * @return the number of published frames the broker hasn't confirmed yet
+     */
+    public long getUnconfirmed() {
+        long retVal = 0L;
+        for (PooledChannel channel : allChannels) {
+            retVal += channel.outstanding.size();
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of frames the broker refused
+     */
+    public long getNacked() { return nacked.get(); }
+
+    /**
+     * @return the number of frames which were unconfirmed when the connection dropped
+     */
+    public long getLost() { return lost.get(); }
+
+    /**
+     * @return the number of received frames dropped because the worker was too far behind
+     */
+    public long getDropped() { return dropped.get(); }
+
+    private void publish(byte[] frame) throws MessagingException {
+        PooledChannel channel;
+        try {
+            channel = channels.poll(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException(true, ex);
+        }
+        if (channel == null) {
+            throw new MessagingException(true, "No RabbitMQ channels are available.");
+        }
+
+        try {
+            channel.publish(frame);
+        } catch (IOException | AlreadyClosedException ex) {
+            throw new MessagingException(true, "Could not publish to RabbitMQ.", ex);
+        } finally {
+            channels.add(channel);
+        }
+    }
+
+    private class PooledChannel {
+        private final Channel channel;
+        private final ConcurrentNavigableMap<Long, Boolean> outstanding = new ConcurrentSkipListMap<>();
+
+        private PooledChannel(Channel channel) throws IOException {
+            this.channel = channel;
+            channel.confirmSelect();
+            channel.addConfirmListener((tag, multiple) -> confirm(tag, multiple), (tag, multiple) -> {
+                int count = confirm(tag, multiple);
+                nacked.addAndGet(count);
+                logger.warn("RabbitMQ refused " + count + " frames.");
+            });
+        }
+
+        private void publish(byte[] frame) throws IOException {
+            AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().appId(serverID.toString()).build();
+            // Only ever used by one thread at a time, so the sequence number can't change underneath us
+            long seqNo = channel.getNextPublishSeqNo();
+            outstanding.put(seqNo, Boolean.TRUE);
+            try {
+                channel.basicPublish(EXCHANGE, "", properties, frame);
+            } catch (IOException | RuntimeException ex) {
+                // Never sent, so never confirmed
+                outstanding.remove(seqNo);
+                throw ex;
+            }
+        }
+
+        private int confirm(long tag, boolean multiple) {
+            if (!multiple) {
+                return outstanding.remove(tag) != null ? 1 : 0;
+            }
+            ConcurrentNavigableMap<Long, Boolean> confirmed = outstanding.headMap(tag, true);
+            int retVal = confirmed.size();
+            confirmed.clear();
+            return retVal;
+        }
+    }
+
+    private class ConfirmRecoveryListener implements RecoveryListener {
+        public void handleRecovery(Recoverable recoverable) {
+            // Sequence numbers restart on recovered channels, anything unconfirmed is never going to be
+            int count = 0;
+            for (PooledChannel channel : allChannels) {
+                count += channel.outstanding.size();
+                channel.outstanding.clear();
+            }
+            if (count > 0) {
+                lost.addAndGet(count);
+                logger.warn("RabbitMQ connection recovered, " + count + " frames were not confirmed before it dropped.");
+            } else {
+                logger.info("RabbitMQ connection recovered.");
+            }
+        }
+
+        public void handleRecoveryStarted(Recoverable recoverable) { logger.warn("RabbitMQ connection lost, reconnecting."); }
+    }
+
+    private class FrameConsumer extends DefaultConsumer {
+        private FrameConsumer(Channel channel) { super(channel); }
+
+        public void handleDelivery(String tag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+            if (serverID.toString().equals(properties.getAppId())) {
+                // Our own message
+                return;
+            }
+
+            if (ConfigUtil.getDebugOrFalse()) {
+                logger.info("Got RabbitMQ frame of " + body.length + " bytes.");
+            }
+
+            try {
+                worker.execute(() -> apply(body));
+            } catch (RejectedExecutionException ignored) {
+                if (!closed) {
+                    long total = dropped.incrementAndGet();
+                    logger.warn("RabbitMQ worker is full. Dropped a frame of " + body.length + " bytes. Total dropped: " + total);
+                }
+            }
+        }
+
+        private void apply(byte[] body) {
+            try {
+                MessageCodec.decode(body, RabbitMQ.this, handler);
+            } catch (MessagingException ex) {
+                logger.error("Could not decode RabbitMQ message: " + ex.getMessage(), ex);
+            } catch (RuntimeException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+    }
+}
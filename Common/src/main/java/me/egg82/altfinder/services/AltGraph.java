@@ -0,0 +1,640 @@
+package me.egg82.altfinder.services;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import me.egg82.altfinder.core.*;
+import me.egg82.altfinder.storage.Storage;
+import me.egg82.altfinder.storage.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the IP/player graph, using storage's long IDs.
+ * Each alt row is an edge between an IP and a player, stored in both directions in primitive arrays
+ * rather than boxed collections. The IP side also keeps the rest of the row, and each IP, player
+ * and server is mapped to its ID once, so getByIP/getByPlayer can be answered without storage.
+ * Build it with load(), then keep it current with add()/remove()/the change feed listener.
+ */
+public class AltGraph {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // ipToPlayers entries are (player, updated, alt ID, created, count, server)
+    private static final int ROW_STRIDE = 6;
+    // playerToIPs entries are (IP, updated)
+    private static final int EDGE_STRIDE = 2;
+
+    private final Adjacency ipToPlayers = new Adjacency(ROW_STRIDE);
+    private final Adjacency playerToIPs = new Adjacency(EDGE_STRIDE);
+    private final Map<String, Long> ipIDs = new HashMap<>();
+    private final Map<Long, String> ips = new HashMap<>();
+    private final Map<UUID, Long> playerIDs = new HashMap<>();
+    private final Map<Long, UUID> players = new HashMap<>();
+    private final Map<Long, ServerResult> servers = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile boolean loaded = false;
+
+    /**
+     * Reads every server, IP, player and alt from storage, a page at a time.
+     */
+    public void load(Storage storage, int pageSize) throws StorageException {
+        if (storage == null) {
+            throw new IllegalArgumentException("storage cannot be null.");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize cannot be <= 0.");
+        }
+
+        long start = System.currentTimeMillis();
+
+        Set<ServerResult> serverPage = storage.dumpServers();
+        lock.writeLock().lock();
+        try {
+            for (ServerResult r : serverPage) {
+                servers.put(r.getLongServerID(), r);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long afterID = 0L;
+        DumpPage<IPResult> ipPage;
+        do {
+            ipPage = storage.dumpIPs(afterID, pageSize);
+            lock.writeLock().lock();
+            try {
+                for (IPResult r : ipPage.getValues()) {
+                    putIPUnlocked(r.getLongIPID(), r.getIP());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            afterID = ipPage.getLastID();
+        } while (!ipPage.isLast(pageSize));
+
+        afterID = 0L;
+        DumpPage<PlayerResult> playerPage;
+        do {
+            playerPage = storage.dumpPlayers(afterID, pageSize);
+            lock.writeLock().lock();
+            try {
+                for (PlayerResult r : playerPage.getValues()) {
+                    putPlayerUnlocked(r.getLongPlayerID(), r.getPlayerID());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            afterID = playerPage.getLastID();
+        } while (!playerPage.isLast(pageSize));
+
+        afterID = 0L;
+        DumpPage<RawAltResult> altPage;
+        do {
+            altPage = storage.dumpAltValues(afterID, pageSize);
+            lock.writeLock().lock();
+            try {
+                for (RawAltResult r : altPage.getValues()) {
+                    addUnlocked(r.getIPID(), r.getLongPlayerID(), r.getID(), r.getLongServerID(), r.getCount(), r.getCreated(), r.getUpdated());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            afterID = altPage.getLastID();
+        } while (!altPage.isLast(pageSize));
+
+        loaded = true;
+        logger.info("Loaded alt graph with " + getIPCount() + " IPs, " + getPlayerCount() + " players and " + getEdgeCount() + " alts in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * @return whether load() has finished, so lookups are answered from the whole graph
+     */
+    public boolean isLoaded() { return loaded; }
+
+    public void add(PostAltResult result) {
+        lock.writeLock().lock();
+        try {
+            putIPUnlocked(result.getIPID(), result.getIP());
+            putPlayerUnlocked(result.getLongPlayerID(), result.getPlayerID());
+            servers.put(result.getLongServerID(), new ServerResult(result.getLongServerID(), result.getServerID(), result.getServerName()));
+            addUnlocked(result.getIPID(), result.getLongPlayerID(), result.getID(), result.getLongServerID(), result.getCount(), result.getCreated(), result.getUpdated());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(QueueResult result) {
+        lock.writeLock().lock();
+        try {
+            putIPUnlocked(result.getLongIPID(), result.getIP());
+            putPlayerUnlocked(result.getLongPlayerID(), result.getPlayerID());
+            servers.put(result.getLongServerID(), new ServerResult(result.getLongServerID(), result.getServerID(), result.getServerName()));
+            addUnlocked(result.getLongIPID(), result.getLongPlayerID(), result.getID(), result.getLongServerID(), result.getCount(), result.getCreated(), result.getUpdated());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A change feed listener which adds new and updated alts.
+     */
+    public ChangeFeed.Listener listener() {
+        return alts -> {
+            for (QueueResult alt : alts) {
+                add(alt);
+            }
+        };
+    }
+
+    /**
+     * Drops the IP and every alt on it.
+     */
+    public void remove(String ip) {
+        lock.writeLock().lock();
+        try {
+            Long longIPID = ipIDs.remove(ip);
+            if (longIPID == null) {
+                return;
+            }
+            ips.remove(longIPID);
+            for (long player : ipToPlayers.remove(longIPID)) {
+                playerToIPs.removeNeighbor(player, longIPID);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the player and every alt of theirs.
+     */
+    public void remove(UUID playerID) {
+        lock.writeLock().lock();
+        try {
+            Long longPlayerID = playerIDs.remove(playerID);
+            if (longPlayerID == null) {
+                return;
+            }
+            players.remove(longPlayerID);
+            for (long ip : playerToIPs.remove(longPlayerID)) {
+                ipToPlayers.removeNeighbor(ip, longPlayerID);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Same results as Storage.getByIP, for alts updated at or after since.
+     */
+    public Set<AltResult> getByIP(String ip, long since) {
+        Set<AltResult> retVal = new LinkedHashSet<>();
+        lock.readLock().lock();
+        try {
+            Long longIPID = ipIDs.get(ip);
+            if (longIPID == null) {
+                return retVal;
+            }
+            long[] rows = ipToPlayers.getEntries(longIPID, since);
+            for (int i = 0; i < rows.length; i += ROW_STRIDE) {
+                AltResult r = toResult(ip, rows, i);
+                if (r != null) {
+                    retVal.add(r);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return retVal;
+    }
+
+    /**
+     * Same results as Storage.getByPlayer, for alts updated at or after since.
+     */
+    public Set<AltResult> getByPlayer(UUID playerID, long since) {
+        Set<AltResult> retVal = new LinkedHashSet<>();
+        lock.readLock().lock();
+        try {
+            Long longPlayerID = playerIDs.get(playerID);
+            if (longPlayerID == null) {
+                return retVal;
+            }
+            for (long ip : playerToIPs.get(longPlayerID, since)) {
+                long[] row = ipToPlayers.getEntry(ip, longPlayerID);
+                AltResult r = row != null ? toResult(ips.get(ip), row, 0) : null;
+                if (r != null) {
+                    retVal.add(r);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the IDs of players seen on the IP at or after since
+     */
+    public long[] getPlayers(long longIPID, long since) {
+        lock.readLock().lock();
+        try {
+            return ipToPlayers.get(longIPID, since);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the IDs of IPs the player was seen on at or after since
+     */
+    public long[] getIPs(long longPlayerID, long since) {
+        lock.readLock().lock();
+        try {
+            return playerToIPs.get(longPlayerID, since);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the IDs of other players sharing any IP with the player, using only alts updated at or after since
+     */
+    public long[] getAlts(long longPlayerID, long since) {
+        lock.readLock().lock();
+        try {
+            long[] ips = playerToIPs.get(longPlayerID, since);
+            long[] retVal = new long[0];
+            int size = 0;
+            for (long ip : ips) {
+                long[] players = ipToPlayers.get(ip, since);
+                if (size + players.length > retVal.length) {
+                    retVal = Arrays.copyOf(retVal, Math.max(retVal.length * 2, size + players.length));
+                }
+                System.arraycopy(players, 0, retVal, size, players.length);
+                size += players.length;
+            }
+            return distinct(retVal, size, longPlayerID);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Breadth-first walk out from the player, one hop being player -> IP -> player.
+     * Stops after maxDepth hops or once maxPlayers players have been found, whichever is first.
+     * @return the players found, nearest first and including the player itself at 0 hops
+     */
+    public Walk walk(long longPlayerID, int maxDepth, int maxPlayers, long since) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth cannot be < 0.");
+        }
+        if (maxPlayers <= 0) {
+            throw new IllegalArgumentException("maxPlayers cannot be <= 0.");
+        }
+
+        long[] players = new long[Math.min(maxPlayers, 16)];
+        int[] hops = new int[players.length];
+        int size = 0;
+        Set<Long> visitedIPs = new HashSet<>();
+        Set<Long> visitedPlayers = new HashSet<>();
+
+        lock.readLock().lock();
+        try {
+            players[size++] = longPlayerID;
+            visitedPlayers.add(longPlayerID);
+
+            // players[start, end) is the current frontier
+            int start = 0;
+            for (int depth = 1; depth <= maxDepth && start < size && size < maxPlayers; depth++) {
+                int end = size;
+                for (int i = start; i < end && size < maxPlayers; i++) {
+                    for (long ip : playerToIPs.get(players[i], since)) {
+                        if (!visitedIPs.add(ip)) {
+                            continue;
+                        }
+                        for (long player : ipToPlayers.get(ip, since)) {
+                            if (size >= maxPlayers) {
+                                break;
+                            }
+                            if (!visitedPlayers.add(player)) {
+                                continue;
+                            }
+                            if (size == players.length) {
+                                players = Arrays.copyOf(players, Math.min(players.length * 2, maxPlayers));
+                                hops = Arrays.copyOf(hops, players.length);
+                            }
+                            players[size] = player;
+                            hops[size++] = depth;
+                        }
+                    }
+                }
+                start = end;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return new Walk(Arrays.copyOf(players, size), Arrays.copyOf(hops, size));
+    }
+
+    /**
+     * @return the storage ID of the player, or -1 if the graph hasn't seen them
+     */
+    public long getLongPlayerID(UUID playerID) {
+        lock.readLock().lock();
+        try {
+            Long retVal = playerIDs.get(playerID);
+            return retVal != null ? retVal : -1L;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the player with the storage ID, or null if the graph hasn't seen them
+     */
+    public UUID getPlayerID(long longPlayerID) {
+        lock.readLock().lock();
+        try {
+            return players.get(longPlayerID);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getIPCount() {
+        lock.readLock().lock();
+        try {
+            return ipToPlayers.live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getPlayerCount() {
+        lock.readLock().lock();
+        try {
+            return playerToIPs.live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getEdgeCount() {
+        lock.readLock().lock();
+        try {
+            return ipToPlayers.edges;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putIPUnlocked(long longIPID, String ip) {
+        ipIDs.put(ip, longIPID);
+        ips.put(longIPID, ip);
+    }
+
+    private void putPlayerUnlocked(long longPlayerID, UUID playerID) {
+        playerIDs.put(playerID, longPlayerID);
+        players.put(longPlayerID, playerID);
+    }
+
+    private void addUnlocked(long longIPID, long longPlayerID, long id, long longServerID, long count, long created, long updated) {
+        ipToPlayers.put(longIPID, new long[] { longPlayerID, updated, id, created, count, longServerID });
+        playerToIPs.put(longPlayerID, new long[] { longIPID, updated });
+    }
+
+    private AltResult toResult(String ip, long[] rows, int offset) {
+        UUID playerID = players.get(rows[offset]);
+        ServerResult server = servers.get(rows[offset + 5]);
+        if (ip == null || playerID == null || server == null) {
+            return null;
+        }
+        return new AltResult(rows[offset + 2], ip, playerID, server.getServerID(), server.getName(), rows[offset + 4], rows[offset + 3], rows[offset + 1]);
+    }
+
+    /**
+     * Sorts and de-duplicates the first size values, dropping exclude.
+     */
+    static long[] distinct(long[] values, int size, long exclude) {
+        Arrays.sort(values, 0, size);
+        int retSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (values[i] != exclude && (retSize == 0 || values[retSize - 1] != values[i])) {
+                values[retSize++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, retSize);
+    }
+
+    public static class Walk {
+        private final long[] players;
+        private final int[] hops;
+
+        private Walk(long[] players, int[] hops) {
+            this.players = players;
+            this.hops = hops;
+        }
+
+        /**
+         * @return the IDs of the players found
+         */
+        public long[] getPlayers() { return players; }
+
+        /**
+         * @return the hop distance of each player, by the same index as getPlayers()
+         */
+        public int[] getHops() { return hops; }
+    }
+
+    /**
+     * Open-addressed map of long ID to a growable array of fixed-size entries.
+     * Each entry starts with (neighbor, updated), and a newer entry for the same neighbor replaces the old one.
+     * Removed keys keep their slot with an empty array, so probing never needs to shift.
+     * Not thread-safe, AltGraph guards it.
+     */
+    private static class Adjacency {
+        // Storage IDs are auto-increment and start at 1
+        private static final long EMPTY = 0L;
+
+        private final int stride;
+        private long[] keys = new long[16];
+        private long[][] values = new long[16][];
+        private int[] lengths = new int[16];
+        // Slots in use, including removed keys
+        private int size = 0;
+        // Keys with at least one neighbor
+        private int live = 0;
+        private long edges = 0L;
+
+        private Adjacency(int stride) { this.stride = stride; }
+
+        private void put(long key, long[] entry) {
+            if (key == EMPTY) {
+                throw new IllegalArgumentException("key cannot be " + EMPTY + ".");
+            }
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+
+            int slot = find(keys, key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                values[slot] = new long[stride * 2];
+                lengths[slot] = 0;
+                size++;
+            }
+
+            long[] entries = values[slot];
+            int length = lengths[slot];
+            for (int i = 0; i < length; i += stride) {
+                if (entries[i] == entry[0]) {
+                    if (entry[1] >= entries[i + 1]) {
+                        System.arraycopy(entry, 0, entries, i, stride);
+                    }
+                    return;
+                }
+            }
+
+            if (length + stride > entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+                values[slot] = entries;
+            }
+            System.arraycopy(entry, 0, entries, length, stride);
+            lengths[slot] = length + stride;
+            if (length == 0) {
+                live++;
+            }
+            edges++;
+        }
+
+        /**
+         * @return the neighbors updated at or after since
+         */
+        private long[] get(long key, long since) {
+            int slot = find(keys, key);
+            if (keys[slot] == EMPTY) {
+                return new long[0];
+            }
+
+            long[] entries = values[slot];
+            int length = lengths[slot];
+            long[] retVal = new long[length / stride];
+            int retSize = 0;
+            for (int i = 0; i < length; i += stride) {
+                if (entries[i + 1] >= since) {
+                    retVal[retSize++] = entries[i];
+                }
+            }
+            return retSize == retVal.length ? retVal : Arrays.copyOf(retVal, retSize);
+        }
+
+        /**
+         * @return the whole entries updated at or after since, one after the other
+         */
+        private long[] getEntries(long key, long since) {
+            int slot = find(keys, key);
+            if (keys[slot] == EMPTY) {
+                return new long[0];
+            }
+
+            long[] entries = values[slot];
+            int length = lengths[slot];
+            long[] retVal = new long[length];
+            int retSize = 0;
+            for (int i = 0; i < length; i += stride) {
+                if (entries[i + 1] >= since) {
+                    System.arraycopy(entries, i, retVal, retSize, stride);
+                    retSize += stride;
+                }
+            }
+            return retSize == retVal.length ? retVal : Arrays.copyOf(retVal, retSize);
+        }
+
+        /**
+         * @return the entry for the neighbor, or null if there isn't one
+         */
+        private long[] getEntry(long key, long neighbor) {
+            int slot = find(keys, key);
+            if (keys[slot] == EMPTY) {
+                return null;
+            }
+
+            long[] entries = values[slot];
+            int length = lengths[slot];
+            for (int i = 0; i < length; i += stride) {
+                if (entries[i] == neighbor) {
+                    return Arrays.copyOfRange(entries, i, i + stride);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Drops every neighbor of the key.
+         * @return the neighbors dropped
+         */
+        private long[] remove(long key) {
+            long[] retVal = get(key, Long.MIN_VALUE);
+            int slot = find(keys, key);
+            if (keys[slot] != EMPTY && lengths[slot] > 0) {
+                values[slot] = new long[stride * 2];
+                lengths[slot] = 0;
+                live--;
+                edges -= retVal.length;
+            }
+            return retVal;
+        }
+
+        private void removeNeighbor(long key, long neighbor) {
+            int slot = find(keys, key);
+            if (keys[slot] == EMPTY) {
+                return;
+            }
+
+            long[] entries = values[slot];
+            int length = lengths[slot];
+            for (int i = 0; i < length; i += stride) {
+                if (entries[i] == neighbor) {
+                    // Order doesn't matter, so the last entry fills the gap
+                    System.arraycopy(entries, length - stride, entries, i, stride);
+                    lengths[slot] = length - stride;
+                    if (length == stride) {
+                        live--;
+                    }
+                    edges--;
+                    return;
+                }
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            long[][] oldValues = values;
+            int[] oldLengths = lengths;
+
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2][];
+            lengths = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = find(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    lengths[slot] = oldLengths[i];
+                }
+            }
+        }
+
+        private static int find(long[] keys, long key) {
+            int mask = keys.length - 1;
+            // Spread sequential IDs across the table
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package me.egg82.altfinder.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import me.egg82.altfinder.core.AltResult;
+import me.egg82.altfinder.storage.StorageException;
+
+/**
+ * Near-cache for getByIP/getByPlayer results.
+ * Entries are keyed by IP or player, each holding results for every "days" value asked for,
+ * so a post for an IP or player drops all of its cached lookups at once.
+ */
+public class AltLookupCache {
+    private final Cache<String, ConcurrentMap<Integer, ImmutableSet<AltResult>>> ipCache;
+    private final Cache<UUID, ConcurrentMap<Integer, ImmutableSet<AltResult>>> playerCache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public AltLookupCache(long maximumSize, long expireAfterWrite, TimeUnit unit) {
+        ipCache = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterWrite, unit).recordStats().build();
+        playerCache = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterWrite, unit).recordStats().build();
+    }
+
+    public interface Loader {
+        Set<AltResult> load() throws StorageException;
+    }
+
+    public ImmutableSet<AltResult> getByIP(String ip, int days, Loader loader) throws StorageException {
+        ConcurrentMap<Integer, ImmutableSet<AltResult>> byDays = ipCache.get(ip, k -> new ConcurrentHashMap<>());
+        return get(byDays, days, loader);
+    }
+
+    public ImmutableSet<AltResult> getByPlayer(UUID playerID, int days, Loader loader) throws StorageException {
+        ConcurrentMap<Integer, ImmutableSet<AltResult>> byDays = playerCache.get(playerID, k -> new ConcurrentHashMap<>());
+        return get(byDays, days, loader);
+    }
+
+    /**
+     * Drops every cached lookup which a new or updated (ip, player) row could change.
+     */
+    public void invalidate(String ip, UUID playerID) {
+        if (ip != null) {
+            ipCache.invalidate(ip);
+        }
+        if (playerID != null) {
+            playerCache.invalidate(playerID);
+        }
+    }
+
+    public void invalidateAll() {
+        ipCache.invalidateAll();
+        playerCache.invalidateAll();
+    }
+
+    public long getHitCount() { return hits.sum(); }
+
+    public long getMissCount() { return misses.sum(); }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0L ? 1.0d : (double) h / total;
+    }
+
+    /**
+     * Caffeine stats for the per-IP entries, mostly useful for eviction counts.
+     * Hits and misses here are per IP, not per lookup; see getHitCount()/getMissCount() for those.
+     */
+    public CacheStats getIPStats() { return ipCache.stats(); }
+
+    public CacheStats getPlayerStats() { return playerCache.stats(); }
+
+    private ImmutableSet<AltResult> get(ConcurrentMap<Integer, ImmutableSet<AltResult>> byDays, int days, Loader loader) throws StorageException {
+        ImmutableSet<AltResult> retVal = byDays.get(days);
+        if (retVal != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            // Not loaded inside computeIfAbsent, storage calls can be slow and throw
+            retVal = ImmutableSet.copyOf(loader.load());
+            byDays.put(days, retVal);
+        }
+        return retVal;
+    }
+}
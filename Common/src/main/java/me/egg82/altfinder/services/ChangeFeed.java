@@ -0,0 +1,228 @@
+package me.egg82.altfinder.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import me.egg82.altfinder.core.QueuePage;
+import me.egg82.altfinder.core.QueueResult;
+import me.egg82.altfinder.storage.Storage;
+import me.egg82.altfinder.storage.StorageException;
+import me.egg82.altfinder.utils.CheckpointUtil;
+import me.egg82.altfinder.utils.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Follows new and updated alts in a storage engine and hands them to a listener, one bounded page at a time.
+ * Alts are read in (updated, ID) order, so a player logging in again on an existing IP shows up too.
+ * Full pages are followed immediately by the next, otherwise the poll interval resets to the minimum
+ * when rows arrive and doubles up to the maximum while idle. The last alt seen is saved to the
+ * checkpoint file (if any) so a restart picks up where it left off instead of at the newest row.
+ */
+public class ChangeFeed {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private Storage storage;
+    private Listener listener;
+    private int pageSize = 500;
+    private long minInterval = 500L;
+    private long maxInterval = 10000L;
+    private File checkpointFile = null;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("AltFinder-ChangeFeed-%d").setDaemon(true).build());
+    private volatile boolean closed = false;
+
+    private volatile long lastUpdated = 0L;
+    private volatile long lastAltID = 0L;
+    private volatile long interval;
+    private final AtomicLong received = new AtomicLong(0L);
+
+    private ChangeFeed() { }
+
+    public interface Listener {
+        void accept(Set<QueueResult> alts);
+    }
+
+    /**
+     * A listener which drops cached lookups for every IP and player with a new alt.
+     */
+    public static Listener invalidating(AltLookupCache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("cache cannot be null.");
+        }
+        return alts -> {
+            for (QueueResult alt : alts) {
+                cache.invalidate(alt.getIP(), alt.getPlayerID());
+            }
+        };
+    }
+
+    public static ChangeFeed.Builder builder(Storage storage, Listener listener) { return new ChangeFeed.Builder(storage, listener); }
+
+    public static class Builder {
+        private final ChangeFeed result = new ChangeFeed();
+
+        private Builder(Storage storage, Listener listener) {
+            if (storage == null) {
+                throw new IllegalArgumentException("storage cannot be null.");
+            }
+            if (listener == null) {
+                throw new IllegalArgumentException("listener cannot be null.");
+            }
+            result.storage = storage;
+            result.listener = listener;
+        }
+
+        public ChangeFeed.Builder pageSize(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+            result.pageSize = value;
+            return this;
+        }
+
+        public ChangeFeed.Builder interval(long min, long max, TimeUnit unit) {
+            if (min <= 0L) {
+                throw new IllegalArgumentException("min cannot be <= 0.");
+            }
+            if (max < min) {
+                throw new IllegalArgumentException("max cannot be < min.");
+            }
+            result.minInterval = unit.toMillis(min);
+            result.maxInterval = unit.toMillis(max);
+            return this;
+        }
+
+        public ChangeFeed.Builder checkpoint(File value) {
+            result.checkpointFile = value;
+            return this;
+        }
+
+        /**
+         * Reads the checkpoint and starts polling.
+         */
+        public ChangeFeed build() throws IOException, StorageException {
+            long headUpdated = result.storage.getLastUpdated();
+            long headID = result.storage.getLastAltID();
+            Properties checkpoint = result.checkpointFile != null ? CheckpointUtil.read(result.checkpointFile) : null;
+            if (checkpoint == null) {
+                // Nothing to resume, only follow what's new from here on
+                result.lastUpdated = headUpdated;
+                result.lastAltID = headID;
+            } else {
+                long checkpointUpdated;
+                long checkpointID;
+                try {
+                    checkpointUpdated = Long.parseLong(checkpoint.getProperty("last-updated", "0"));
+                    checkpointID = Long.parseLong(checkpoint.getProperty("last-alt-id", "0"));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Change feed checkpoint is corrupt.", ex);
+                }
+
+                if (checkpointUpdated > headUpdated) {
+                    result.logger.warn("Change feed checkpoint (" + checkpointUpdated + ") is ahead of storage (" + headUpdated + "), starting from the newest alt instead.");
+                    result.lastUpdated = headUpdated;
+                    result.lastAltID = headID;
+                } else {
+                    result.lastUpdated = checkpointUpdated;
+                    result.lastAltID = checkpointID;
+                }
+            }
+
+            result.interval = result.minInterval;
+            result.executor.execute(result::poll);
+            return result;
+        }
+    }
+
+    public long getLastUpdated() { return lastUpdated; }
+
+    public long getLastAltID() { return lastAltID; }
+
+    public long getReceived() { return received.get(); }
+
+    /**
+     * @return the current delay between polls in milliseconds, or 0 while catching up
+     */
+    public long getInterval() { return interval; }
+
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5L, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    private void poll() {
+        if (closed) {
+            return;
+        }
+
+        try {
+            QueuePage<QueueResult> page = storage.getQueue(lastUpdated, lastAltID, pageSize);
+            if (!page.getValues().isEmpty()) {
+                received.addAndGet(page.getValues().size());
+                listener.accept(page.getValues());
+            }
+            if (page.getRows() > 0) {
+                lastUpdated = page.getLastUpdated();
+                lastAltID = page.getLastID();
+                writeCheckpoint();
+            }
+
+            if (!page.isLast(pageSize)) {
+                // Backlog, keep reading
+                interval = 0L;
+            } else if (page.getRows() > 0) {
+                interval = minInterval;
+            } else {
+                interval = Math.min(Math.max(interval * 2L, minInterval), maxInterval);
+            }
+
+            if (ConfigUtil.getDebugOrFalse() && page.getRows() > 0) {
+                logger.info("Change feed read " + page.getRows() + " alts up to " + lastUpdated + " (ID " + lastAltID + ")");
+            }
+        } catch (StorageException ex) {
+            logger.error("Could not read change feed: " + ex.getMessage(), ex);
+            interval = maxInterval;
+        } catch (IOException ex) {
+            logger.error("Could not write change feed checkpoint: " + ex.getMessage(), ex);
+        } catch (RuntimeException ex) {
+            // Don't let a bad listener kill the feed
+            logger.error(ex.getMessage(), ex);
+            interval = Math.max(interval, minInterval);
+        }
+
+        if (!closed) {
+            try {
+                executor.schedule(this::poll, interval, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // Closed while polling
+            }
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("last-updated", String.valueOf(lastUpdated));
+        properties.setProperty("last-alt-id", String.valueOf(lastAltID));
+        CheckpointUtil.write(checkpointFile, properties, "AltFinder change feed checkpoint");
+    }
+}
@@ -0,0 +1,80 @@
+package me.egg82.altfinder.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import me.egg82.altfinder.messaging.Messaging;
+import me.egg82.altfinder.utils.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passes each message ID to the wrapped handler once, no matter how many messaging engines deliver it.
+ * Seen IDs are remembered for the window (and at most maximumSize of them), which only needs to cover
+ * the spread in delivery time between engines.
+ */
+public class DeduplicatingMessagingHandler implements MessagingHandler {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final MessagingHandler handler;
+    private final Cache<UUID, Boolean> seen;
+    private final AtomicLong duplicates = new AtomicLong(0L);
+
+    public DeduplicatingMessagingHandler(MessagingHandler handler, long maximumSize, long window, TimeUnit unit) {
+        if (handler == null) {
+            throw new IllegalArgumentException("handler cannot be null.");
+        }
+        if (maximumSize <= 0L) {
+            throw new IllegalArgumentException("maximumSize cannot be <= 0.");
+        }
+
+        this.handler = handler;
+        this.seen = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(window, unit).build();
+    }
+
+    public void serverCallback(UUID messageID, long longServerID, UUID serverID, String name, Messaging callingMessaging) {
+        if (isNew(messageID)) {
+            handler.serverCallback(messageID, longServerID, serverID, name, callingMessaging);
+        }
+    }
+
+    public void ipCallback(UUID messageID, String ip, long longIPID, Messaging callingMessaging) {
+        if (isNew(messageID)) {
+            handler.ipCallback(messageID, ip, longIPID, callingMessaging);
+        }
+    }
+
+    public void playerCallback(UUID messageID, UUID playerID, long longPlayerID, Messaging callingMessaging) {
+        if (isNew(messageID)) {
+            handler.playerCallback(messageID, playerID, longPlayerID, callingMessaging);
+        }
+    }
+
+    public void postCallback(UUID messageID, long id, long longIPID, String ip, long longPlayerID, UUID playerID, long longServerID, UUID serverID, String serverName, long count, long created, long updated, Messaging callingMessaging) {
+        if (isNew(messageID)) {
+            handler.postCallback(messageID, id, longIPID, ip, longPlayerID, playerID, longServerID, serverID, serverName, count, created, updated, callingMessaging);
+        }
+    }
+
+    public long getDuplicates() { return duplicates.get(); }
+
+    /**
+     * Marks the message ID as seen. Lets messages from outside the messaging engines (eg. the legacy Redis and
+     * RabbitMQ channels) share the same window.
+     * @return true the first time the ID is seen within the window
+     */
+    public boolean isNew(UUID messageID) {
+        // putIfAbsent is atomic, so two engines delivering at once can't both win
+        if (seen.asMap().putIfAbsent(messageID, Boolean.TRUE) == null) {
+            return true;
+        }
+
+        duplicates.incrementAndGet();
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Ignoring duplicate message " + messageID);
+        }
+        return false;
+    }
+}
@@ -1,23 +1,30 @@
 package me.egg82.altfinder.services;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
-import java.util.HashSet;
-import java.util.Optional;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
 import me.egg82.altfinder.APIException;
+import me.egg82.altfinder.core.AltResult;
 import me.egg82.altfinder.core.PlayerData;
+import me.egg82.altfinder.core.PostAltResult;
 import me.egg82.altfinder.enums.SQLType;
 import me.egg82.altfinder.extended.CachedConfigValues;
+import me.egg82.altfinder.messaging.Messaging;
+import me.egg82.altfinder.messaging.MessagingException;
 import me.egg82.altfinder.sql.MySQL;
 import me.egg82.altfinder.sql.SQLite;
+import me.egg82.altfinder.storage.StorageException;
 import me.egg82.altfinder.utils.ConfigUtil;
+import me.egg82.altfinder.utils.ValidationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class InternalAPI {
     private static final Logger logger = LoggerFactory.getLogger(InternalAPI.class);
 
+    // The single lookups aren't limited by age either
+    private static final int ALL_DAYS = 36500;
+
     public Set<PlayerData> getPlayerData(String ip) throws APIException {
         Optional<CachedConfigValues> cachedConfig = ConfigUtil.getCachedConfig();
         if (!cachedConfig.isPresent()) {
@@ -37,30 +44,27 @@ public class InternalAPI {
             return redisResult.get();
         }
 
-        // SQL
-        try {
-            Optional<Set<PlayerData>> result = Optional.empty();
-            if (cachedConfig.get().getSQLType() == SQLType.MySQL) {
-                result = MySQL.getData(ip);
-            } else if (cachedConfig.get().getSQLType() == SQLType.SQLite) {
-                result = SQLite.getData(ip);
+        // Storage, or legacy SQL when no storage engines are configured
+        Set<PlayerData> result;
+        if (cachedConfig.get().getStorage().isEmpty()) {
+            result = getLegacyData(cachedConfig.get(), ip);
+        } else {
+            try {
+                result = toPlayerData(getReader(cachedConfig.get()).getByIP(ip, ALL_DAYS));
+            } catch (StorageException ex) {
+                logger.error(ex.getMessage(), ex);
+                throw new APIException(true, ex);
             }
-
-            if (result.isPresent()) {
-                if (ConfigUtil.getDebugOrFalse()) {
-                    logger.info(ip + " found in storage.");
-                }
-                // Update messaging/Redis, force same-thread
-                Redis.update(result.get());
-                RabbitMQ.broadcast(result.get());
-                return result.get();
+        }
+        if (!result.isEmpty()) {
+            if (ConfigUtil.getDebugOrFalse()) {
+                logger.info(ip + " found in storage.");
             }
-        } catch (SQLException ex) {
-            logger.error(ex.getMessage(), ex);
-            throw new APIException(true, ex);
+            // Update messaging/Redis, force same-thread
+            Redis.fillIPs(result);
+            RabbitMQ.broadcast(result);
         }
-
-        return new HashSet<>();
+        return result;
     }
 
     public Set<PlayerData> getPlayerData(UUID uuid) throws APIException {
@@ -82,30 +86,146 @@ public class InternalAPI {
             return redisResult.get();
         }
 
-        // SQL
-        try {
-            Optional<Set<PlayerData>> result = Optional.empty();
-            if (cachedConfig.get().getSQLType() == SQLType.MySQL) {
-                result = MySQL.getData(uuid);
-            } else if (cachedConfig.get().getSQLType() == SQLType.SQLite) {
-                result = SQLite.getData(uuid);
+        // Storage, or legacy SQL when no storage engines are configured
+        Set<PlayerData> result;
+        if (cachedConfig.get().getStorage().isEmpty()) {
+            result = getLegacyData(cachedConfig.get(), uuid);
+        } else {
+            try {
+                result = toPlayerData(getReader(cachedConfig.get()).getByPlayer(uuid, ALL_DAYS));
+            } catch (StorageException ex) {
+                logger.error(ex.getMessage(), ex);
+                throw new APIException(true, ex);
             }
+        }
+        if (!result.isEmpty()) {
+            if (ConfigUtil.getDebugOrFalse()) {
+                logger.info(uuid + " found in storage.");
+            }
+            // Update messaging/Redis, force same-thread
+            Redis.fillPlayers(result);
+            RabbitMQ.broadcast(result);
+        }
+        return result;
+    }
 
-            if (result.isPresent()) {
-                if (ConfigUtil.getDebugOrFalse()) {
-                    logger.info(uuid + " found in storage.");
-                }
-                // Update messaging/Redis, force same-thread
-                Redis.update(result.get());
-                RabbitMQ.broadcast(result.get());
-                return result.get();
+    public Set<PlayerData> getPlayerDataByIPs(Collection<String> ips) throws APIException {
+        Optional<CachedConfigValues> cachedConfig = ConfigUtil.getCachedConfig();
+        if (!cachedConfig.isPresent()) {
+            throw new APIException(true, "Could not get cached config.");
+        }
+
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Getting results for " + ips.size() + " IPs");
+        }
+
+        // Redis
+        Set<PlayerData> retVal = new HashSet<>();
+        Set<String> misses = new HashSet<>(ips);
+        for (Map.Entry<String, Set<PlayerData>> kvp : Redis.getIPResults(misses).entrySet()) {
+            retVal.addAll(kvp.getValue());
+            misses.remove(kvp.getKey());
+        }
+        if (misses.isEmpty()) {
+            return retVal;
+        }
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info(misses.size() + " IPs not found in Redis.");
+        }
+
+        // Storage, or legacy SQL when no storage engines are configured
+        Set<PlayerData> result;
+        if (cachedConfig.get().getStorage().isEmpty()) {
+            result = new HashSet<>();
+            for (String ip : misses) {
+                result.addAll(getLegacyData(cachedConfig.get(), ip));
             }
-        } catch (SQLException ex) {
+        } else {
+            try {
+                result = toPlayerData(getReader(cachedConfig.get()).getByIPs(misses, ALL_DAYS));
+            } catch (StorageException ex) {
+                logger.error(ex.getMessage(), ex);
+                throw new APIException(true, ex);
+            }
+        }
+        if (!result.isEmpty()) {
+            // Update messaging/Redis, force same-thread
+            Redis.fillIPs(result);
+            RabbitMQ.broadcast(result);
+            retVal.addAll(result);
+        }
+        return retVal;
+    }
+
+    public Set<PlayerData> getPlayerDataByUUIDs(Collection<UUID> uuids) throws APIException {
+        Optional<CachedConfigValues> cachedConfig = ConfigUtil.getCachedConfig();
+        if (!cachedConfig.isPresent()) {
+            throw new APIException(true, "Could not get cached config.");
+        }
+
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Getting results for " + uuids.size() + " players");
+        }
+
+        // Redis
+        Set<PlayerData> retVal = new HashSet<>();
+        Set<UUID> misses = new HashSet<>(uuids);
+        for (Map.Entry<UUID, Set<PlayerData>> kvp : Redis.getPlayerResults(misses).entrySet()) {
+            retVal.addAll(kvp.getValue());
+            misses.remove(kvp.getKey());
+        }
+        if (misses.isEmpty()) {
+            return retVal;
+        }
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info(misses.size() + " players not found in Redis.");
+        }
+
+        // Storage, or legacy SQL when no storage engines are configured
+        Set<PlayerData> result;
+        if (cachedConfig.get().getStorage().isEmpty()) {
+            result = new HashSet<>();
+            for (UUID uuid : misses) {
+                result.addAll(getLegacyData(cachedConfig.get(), uuid));
+            }
+        } else {
+            try {
+                result = toPlayerData(getReader(cachedConfig.get()).getByPlayers(misses, ALL_DAYS));
+            } catch (StorageException ex) {
+                logger.error(ex.getMessage(), ex);
+                throw new APIException(true, ex);
+            }
+        }
+        if (!result.isEmpty()) {
+            // Update messaging/Redis, force same-thread
+            Redis.fillPlayers(result);
+            RabbitMQ.broadcast(result);
+            retVal.addAll(result);
+        }
+        return retVal;
+    }
+
+    public Map<UUID, Integer> getLinkedPlayers(UUID uuid, int maxDepth, int maxPlayers) throws APIException {
+        Optional<CachedConfigValues> cachedConfig = ConfigUtil.getCachedConfig();
+        if (!cachedConfig.isPresent()) {
+            throw new APIException(true, "Could not get cached config.");
+        }
+
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Getting players linked to " + uuid + " within " + maxDepth + " hops");
+        }
+
+        if (cachedConfig.get().getStorage().isEmpty()) {
+            return getLegacyLinkedPlayers(cachedConfig.get(), uuid, maxDepth, maxPlayers);
+        }
+
+        // Walked server-side by the storage engine, rather than one lookup per IP and player
+        try {
+            return getReader(cachedConfig.get()).getLinkedPlayers(uuid, maxDepth, maxPlayers);
+        } catch (StorageException ex) {
             logger.error(ex.getMessage(), ex);
             throw new APIException(true, ex);
         }
-
-        return new HashSet<>();
     }
 
     public static void add(PlayerData data) throws APIException {
@@ -114,7 +234,13 @@ public class InternalAPI {
             throw new APIException(true, "Could not get cached config.");
         }
 
-        if (cachedConfig.get().getSQLType() == SQLType.SQLite) {
+        // Redis and RabbitMQ can both deliver the same post, only apply the first copy
+        if (cachedConfig.get().getDedupe() != null && !cachedConfig.get().getDedupe().isNew(getLegacyMessageID(data))) {
+            return;
+        }
+
+        // Storage engines share posts over their own messaging
+        if (cachedConfig.get().getStorage().isEmpty() && cachedConfig.get().getSQLType() == SQLType.SQLite) {
             try {
                 SQLite.add(data);
             } catch (SQLException ex) {
@@ -130,7 +256,20 @@ public class InternalAPI {
             throw new APIException(true, "Could not get cached config.");
         }
 
-        if (cachedConfig.get().getSQLType() == SQLType.SQLite) {
+        // Deleted on another server
+        if (cachedConfig.get().getCache() != null) {
+            cachedConfig.get().getCache().invalidateAll();
+        }
+        if (cachedConfig.get().getGraph() != null) {
+            if (ValidationUtil.isValidUuid(search)) {
+                cachedConfig.get().getGraph().remove(UUID.fromString(search));
+            } else {
+                cachedConfig.get().getGraph().remove(search);
+            }
+        }
+
+        // Storage engines are deleted from by the server which sent this
+        if (cachedConfig.get().getStorage().isEmpty() && cachedConfig.get().getSQLType() == SQLType.SQLite) {
             try {
                 SQLite.delete(search);
             } catch (SQLException ex) {
@@ -140,7 +279,7 @@ public class InternalAPI {
         }
     }
 
-    public void add(UUID uuid, String ip, String server) throws APIException {
+    public void add(UUID uuid, String ip, String server, long time) throws APIException {
         Optional<CachedConfigValues> cachedConfig = ConfigUtil.getCachedConfig();
         if (!cachedConfig.isPresent()) {
             throw new APIException(true, "Could not get cached config.");
@@ -150,28 +289,44 @@ public class InternalAPI {
             logger.info("Setting new data for " + uuid + " (" + ip + ")");
         }
 
-        // SQL
-        PlayerData result = null;
+        if (cachedConfig.get().getStorage().isEmpty()) {
+            addLegacy(cachedConfig.get(), uuid, ip, server);
+            return;
+        }
+
+        // Storage, fanned out to every engine. Engines record their own server name
+        PostAltResult result;
         try {
-            if (cachedConfig.get().getSQLType() == SQLType.MySQL) {
-                result = MySQL.update(uuid, ip, server);
-            } else if (cachedConfig.get().getSQLType() == SQLType.SQLite) {
-                result = SQLite.update(uuid, ip, server);
-            }
-        } catch (SQLException ex) {
+            result = getWriter(cachedConfig.get()).post(uuid, ip, time);
+        } catch (StorageException ex) {
             logger.error(ex.getMessage(), ex);
             throw new APIException(true, ex);
         }
 
-        if (result == null) {
-            throw new APIException(true, "Could not add " + uuid + " (" + ip + ")");
+        PlayerData data = new PlayerData(uuid, ip, result.getCount(), result.getServerName(), result.getCreated(), result.getUpdated());
+
+        // Each post goes out over one path only, so other servers don't apply it twice
+        if (cachedConfig.get().getMessaging().isEmpty()) {
+            // Redis, published
+            Redis.update(data);
+
+            // RabbitMQ
+            RabbitMQ.broadcast(data);
+            return;
         }
 
-        // Redis
-        Redis.update(result);
+        // Messaging
+        UUID messageID = UUID.randomUUID();
+        for (Messaging messaging : cachedConfig.get().getMessaging()) {
+            try {
+                messaging.sendPost(messageID, result.getID(), result.getIPID(), result.getIP(), result.getLongPlayerID(), result.getPlayerID(), result.getLongServerID(), result.getServerID(), result.getServerName(), result.getCount(), result.getCreated(), result.getUpdated());
+            } catch (MessagingException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
 
-        // RabbitMQ
-        RabbitMQ.broadcast(result);
+        // Redis, not published
+        Redis.cache(data);
     }
 
     public void remove(UUID uuid) throws APIException {
@@ -184,16 +339,24 @@ public class InternalAPI {
             logger.info("Removing data for " + uuid);
         }
 
-        // SQL
-        try {
-            if (cachedConfig.get().getSQLType() == SQLType.MySQL) {
-                MySQL.delete(uuid.toString());
-            } else if (cachedConfig.get().getSQLType() == SQLType.SQLite) {
-                SQLite.delete(uuid.toString());
+        // Storage, or legacy SQL when no storage engines are configured
+        if (cachedConfig.get().getStorage().isEmpty()) {
+            deleteLegacy(cachedConfig.get(), uuid.toString());
+        } else {
+            try {
+                getWriter(cachedConfig.get()).delete(uuid);
+            } catch (StorageException ex) {
+                logger.error(ex.getMessage(), ex);
+                throw new APIException(true, ex);
             }
-        } catch (SQLException ex) {
-            logger.error(ex.getMessage(), ex);
-            throw new APIException(true, ex);
+        }
+
+        // Cache
+        if (cachedConfig.get().getCache() != null) {
+            cachedConfig.get().getCache().invalidateAll();
+        }
+        if (cachedConfig.get().getGraph() != null) {
+            cachedConfig.get().getGraph().remove(uuid);
         }
 
         // Redis
@@ -213,22 +376,167 @@ public class InternalAPI {
             logger.info("Removing data for " + ip);
         }
 
+        // Storage, or legacy SQL when no storage engines are configured
+        if (cachedConfig.get().getStorage().isEmpty()) {
+            deleteLegacy(cachedConfig.get(), ip);
+        } else {
+            try {
+                getWriter(cachedConfig.get()).delete(ip);
+            } catch (StorageException ex) {
+                logger.error(ex.getMessage(), ex);
+                throw new APIException(true, ex);
+            }
+        }
+
+        // Cache
+        if (cachedConfig.get().getCache() != null) {
+            cachedConfig.get().getCache().invalidateAll();
+        }
+        if (cachedConfig.get().getGraph() != null) {
+            cachedConfig.get().getGraph().remove(ip);
+        }
+
+        // Redis
+        Redis.delete(ip);
+
+        // RabbitMQ
+        RabbitMQ.delete(ip);
+    }
+
+    /**
+     * Writes a login to the legacy SQL storage, used when no storage engines are configured.
+     * The legacy tables stamp rows themselves, so the login time isn't kept.
+     */
+    private static void addLegacy(CachedConfigValues cachedConfig, UUID uuid, String ip, String server) throws APIException {
         // SQL
+        PlayerData result = null;
         try {
-            if (cachedConfig.get().getSQLType() == SQLType.MySQL) {
-                MySQL.delete(ip);
-            } else if (cachedConfig.get().getSQLType() == SQLType.SQLite) {
-                SQLite.delete(ip);
+            if (cachedConfig.getSQLType() == SQLType.MySQL) {
+                result = MySQL.update(uuid, ip, server);
+            } else if (cachedConfig.getSQLType() == SQLType.SQLite) {
+                result = SQLite.update(uuid, ip, server);
             }
         } catch (SQLException ex) {
             logger.error(ex.getMessage(), ex);
             throw new APIException(true, ex);
         }
 
+        if (result == null) {
+            throw new APIException(true, "Could not add " + uuid + " (" + ip + ")");
+        }
+
         // Redis
-        Redis.delete(ip);
+        Redis.update(result);
 
         // RabbitMQ
-        RabbitMQ.delete(ip);
+        RabbitMQ.broadcast(result);
+    }
+
+    private static Set<PlayerData> getLegacyData(CachedConfigValues cachedConfig, String ip) throws APIException {
+        try {
+            Optional<Set<PlayerData>> result = Optional.empty();
+            if (cachedConfig.getSQLType() == SQLType.MySQL) {
+                result = MySQL.getData(ip);
+            } else if (cachedConfig.getSQLType() == SQLType.SQLite) {
+                result = SQLite.getData(ip);
+            }
+            return result.orElseGet(HashSet::new);
+        } catch (SQLException ex) {
+            logger.error(ex.getMessage(), ex);
+            throw new APIException(true, ex);
+        }
+    }
+
+    private static Set<PlayerData> getLegacyData(CachedConfigValues cachedConfig, UUID uuid) throws APIException {
+        try {
+            Optional<Set<PlayerData>> result = Optional.empty();
+            if (cachedConfig.getSQLType() == SQLType.MySQL) {
+                result = MySQL.getData(uuid);
+            } else if (cachedConfig.getSQLType() == SQLType.SQLite) {
+                result = SQLite.getData(uuid);
+            }
+            return result.orElseGet(HashSet::new);
+        } catch (SQLException ex) {
+            logger.error(ex.getMessage(), ex);
+            throw new APIException(true, ex);
+        }
+    }
+
+    /**
+     * Walks the legacy SQL storage one hop at a time, the same way storage engines do server-side.
+     */
+    private static Map<UUID, Integer> getLegacyLinkedPlayers(CachedConfigValues cachedConfig, UUID uuid, int maxDepth, int maxPlayers) throws APIException {
+        Map<UUID, Integer> retVal = new LinkedHashMap<>();
+        Set<PlayerData> frontier = getLegacyData(cachedConfig, uuid);
+        if (frontier.isEmpty() || maxPlayers <= 0) {
+            return retVal;
+        }
+        retVal.put(uuid, 0);
+
+        Set<String> seenIPs = new HashSet<>();
+        for (int depth = 1; depth <= maxDepth && !frontier.isEmpty(); depth++) {
+            Set<PlayerData> next = new HashSet<>();
+            for (PlayerData data : frontier) {
+                if (!seenIPs.add(data.getIP())) {
+                    continue;
+                }
+                for (PlayerData linked : getLegacyData(cachedConfig, data.getIP())) {
+                    if (retVal.containsKey(linked.getUUID())) {
+                        continue;
+                    }
+                    if (retVal.size() >= maxPlayers) {
+                        return retVal;
+                    }
+                    retVal.put(linked.getUUID(), depth);
+                    if (depth < maxDepth) {
+                        next.addAll(getLegacyData(cachedConfig, linked.getUUID()));
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return retVal;
+    }
+
+    private static void deleteLegacy(CachedConfigValues cachedConfig, String search) throws APIException {
+        try {
+            if (cachedConfig.getSQLType() == SQLType.MySQL) {
+                MySQL.delete(search);
+            } else if (cachedConfig.getSQLType() == SQLType.SQLite) {
+                SQLite.delete(search);
+            }
+        } catch (SQLException ex) {
+            logger.error(ex.getMessage(), ex);
+            throw new APIException(true, ex);
+        }
+    }
+
+    private static StorageWriter getWriter(CachedConfigValues cachedConfig) throws StorageException {
+        if (cachedConfig.getWriter() == null) {
+            throw new StorageException(false, "Storage writer is not available.");
+        }
+        return cachedConfig.getWriter();
+    }
+
+    private static StorageReader getReader(CachedConfigValues cachedConfig) throws StorageException {
+        if (cachedConfig.getReader() == null) {
+            throw new StorageException(false, "Storage reader is not available.");
+        }
+        return cachedConfig.getReader();
+    }
+
+    /**
+     * Legacy messages don't carry an ID, so one is made from the post itself. Copies of a post share it.
+     */
+    private static UUID getLegacyMessageID(PlayerData data) {
+        return UUID.nameUUIDFromBytes((data.getUUID() + "|" + data.getIP() + "|" + data.getCount() + "|" + data.getUpdated()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Set<PlayerData> toPlayerData(Set<AltResult> alts) {
+        Set<PlayerData> retVal = new HashSet<>();
+        for (AltResult alt : alts) {
+            retVal.add(new PlayerData(alt.getPlayerID(), alt.getIP(), alt.getCount(), alt.getServerName(), alt.getCreated(), alt.getUpdated()));
+        }
+        return retVal;
     }
 }
@@ -0,0 +1,127 @@
+package me.egg82.altfinder.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import me.egg82.altfinder.APIException;
+import me.egg82.altfinder.AltAPI;
+import me.egg82.altfinder.core.LoginRecord;
+import me.egg82.altfinder.utils.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class LoginRecorder {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final AltAPI api = AltAPI.getInstance();
+
+    private final BlockingQueue<LoginRecord> queue;
+    private final int drainSize;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("AltFinder-LoginWriter-%d").setDaemon(true).build());
+
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private volatile boolean closed = false;
+
+    public LoginRecorder(int capacity, int drainSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity cannot be <= 0.");
+        }
+        if (drainSize <= 0) {
+            throw new IllegalArgumentException("drainSize cannot be <= 0.");
+        }
+
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.drainSize = drainSize;
+        writer.submit(this::drain);
+    }
+
+    /**
+     * Queues a login to be written off-thread. Never blocks.
+     * @return false if the recorder is closed or the queue is full and the login was dropped
+     */
+    public boolean record(UUID playerID, String ip, String server) {
+        if (playerID == null) {
+            throw new IllegalArgumentException("playerID cannot be null.");
+        }
+        if (ip == null) {
+            throw new IllegalArgumentException("ip cannot be null.");
+        }
+        if (server == null) {
+            throw new IllegalArgumentException("server cannot be null.");
+        }
+
+        if (closed) {
+            return false;
+        }
+
+        if (!queue.offer(new LoginRecord(playerID, ip, server, System.currentTimeMillis()))) {
+            long total = dropped.incrementAndGet();
+            logger.warn("Login queue is full. Dropped login for " + playerID + " (" + ip + "). Total dropped: " + total);
+            return false;
+        }
+        return true;
+    }
+
+    public int getQueueSize() { return queue.size(); }
+
+    public long getDropped() { return dropped.get(); }
+
+    public void close(long timeout, TimeUnit unit) {
+        // The drainer polls, so it sees this within one poll and flushes what's left
+        closed = true;
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(timeout, unit)) {
+                logger.warn("Login writer did not finish in time. " + queue.size() + " logins were not written.");
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            logger.error(ex.getMessage(), ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<LoginRecord> batch = new ArrayList<>(drainSize);
+        while (!closed) {
+            LoginRecord first;
+            try {
+                first = queue.poll(250L, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignored) {
+                break;
+            }
+            if (first == null) {
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, drainSize - 1);
+            write(batch);
+            batch.clear();
+        }
+
+        // Flush whatever is left on shutdown
+        queue.drainTo(batch);
+        write(batch);
+    }
+
+    private void write(List<LoginRecord> batch) {
+        for (LoginRecord record : batch) {
+            if (ConfigUtil.getDebugOrFalse()) {
+                logger.info("Writing login for " + record.getPlayerID() + " (" + record.getIP() + "), queued " + (System.currentTimeMillis() - record.getTime()) + "ms ago");
+            }
+
+            try {
+                api.addPlayerData(record.getPlayerID(), record.getIP(), record.getServer(), record.getTime());
+            } catch (APIException ex) {
+                logger.error(ex.getMessage(), ex);
+            } catch (RuntimeException ex) {
+                // Keep the writer alive no matter what a single record does
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package me.egg82.altfinder.services;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+import me.egg82.altfinder.core.PostAltResult;
+import me.egg82.altfinder.extended.CachedConfigValues;
+import me.egg82.altfinder.messaging.Messaging;
+import me.egg82.altfinder.messaging.MessagingException;
+import me.egg82.altfinder.storage.Storage;
+import me.egg82.altfinder.storage.StorageException;
+import me.egg82.altfinder.utils.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies messages from other servers to storage, and tells other servers about IDs created in storage here.
+ */
+public class MessagingHandlerImpl implements MessagingHandler, StorageHandler {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final StorageWriter writer;
+    private final AltLookupCache cache;
+    private final AltGraph graph;
+
+    /**
+     * @param cache the near-cache to invalidate on posts, or null for none
+     * @param graph the alt graph to add posts to, or null for none
+     */
+    public MessagingHandlerImpl(StorageWriter writer, AltLookupCache cache, AltGraph graph) {
+        if (writer == null) {
+            throw new IllegalArgumentException("writer cannot be null.");
+        }
+
+        this.writer = writer;
+        this.cache = cache;
+        this.graph = graph;
+    }
+
+    public void serverCallback(UUID messageID, long longServerID, UUID serverID, String name, Messaging callingMessaging) {
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Got server " + serverID + " (" + longServerID + ") from message " + messageID);
+        }
+
+        try {
+            writer.write(s -> {
+                s.setServerRaw(longServerID, serverID, name);
+                return null;
+            });
+        } catch (StorageException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    public void ipCallback(UUID messageID, String ip, long longIPID, Messaging callingMessaging) {
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Got IP " + ip + " (" + longIPID + ") from message " + messageID);
+        }
+
+        try {
+            writer.write(s -> {
+                s.setIPRaw(longIPID, ip);
+                return null;
+            });
+        } catch (StorageException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    public void playerCallback(UUID messageID, UUID playerID, long longPlayerID, Messaging callingMessaging) {
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Got player " + playerID + " (" + longPlayerID + ") from message " + messageID);
+        }
+
+        try {
+            writer.write(s -> {
+                s.setPlayerRaw(longPlayerID, playerID);
+                return null;
+            });
+        } catch (StorageException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    public void postCallback(UUID messageID, long id, long longIPID, String ip, long longPlayerID, UUID playerID, long longServerID, UUID serverID, String serverName, long count, long created, long updated, Messaging callingMessaging) {
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Got post " + id + " for " + playerID + " (" + ip + ") from message " + messageID);
+        }
+
+        try {
+            writer.write(s -> {
+                s.postRaw(id, longIPID, longPlayerID, longServerID, count, created, updated);
+                return null;
+            });
+            // Without waiting on the change feed to catch up
+            if (graph != null) {
+                graph.add(new PostAltResult(id, longIPID, ip, longPlayerID, playerID, longServerID, serverID, serverName, count, created, updated));
+            }
+        } catch (StorageException ex) {
+            logger.error(ex.getMessage(), ex);
+        } finally {
+            // After the write, so a lookup racing it can't re-cache the old rows
+            if (cache != null) {
+                cache.invalidate(ip, playerID);
+            }
+        }
+    }
+
+    public void ipIDCreationCallback(String ip, long longIPID, Storage callingStorage) {
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Created IP " + ip + " (" + longIPID + "), broadcasting.");
+        }
+
+        UUID messageID = UUID.randomUUID();
+        for (Messaging messaging : getMessaging()) {
+            try {
+                messaging.sendIP(messageID, longIPID, ip);
+            } catch (MessagingException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    public void playerIDCreationCallback(UUID playerID, long longPlayerID, Storage callingStorage) {
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Created player " + playerID + " (" + longPlayerID + "), broadcasting.");
+        }
+
+        UUID messageID = UUID.randomUUID();
+        for (Messaging messaging : getMessaging()) {
+            try {
+                messaging.sendPlayer(messageID, longPlayerID, playerID);
+            } catch (MessagingException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private Iterable<Messaging> getMessaging() {
+        Optional<CachedConfigValues> cachedConfig = ConfigUtil.getCachedConfig();
+        return cachedConfig.isPresent() ? cachedConfig.get().getMessaging() : Collections.emptyList();
+    }
+}
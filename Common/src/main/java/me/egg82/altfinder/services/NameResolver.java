@@ -0,0 +1,132 @@
+package me.egg82.altfinder.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves player names in bulk.
+ * UUIDs are de-duplicated and cached names are returned straight away. The rest are looked up
+ * concurrently, so a large result set costs about one lookup's latency rather than one per player.
+ * A UUID already being looked up by another caller is waited on, not looked up twice.
+ * Rate limiting is left to the lookup, since only its network requests need it.
+ */
+public class NameResolver {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Cache<UUID, String> cache = Caffeine.newBuilder().maximumSize(10000L).expireAfterWrite(1L, TimeUnit.HOURS).build();
+    private final ConcurrentMap<UUID, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final long timeout;
+    private final ExecutorService workPool;
+
+    /**
+     * @param threads the most lookups running at once
+     * @param timeout the longest a single resolve call waits for its lookups
+     */
+    public NameResolver(int threads, long timeout, TimeUnit unit) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads cannot be <= 0.");
+        }
+        if (timeout <= 0L) {
+            throw new IllegalArgumentException("timeout cannot be <= 0.");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null.");
+        }
+
+        this.timeout = unit.toNanos(timeout);
+        workPool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("AltFinder-NameResolver-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Blocks until every name has been looked up, or the timeout has passed.
+     * @return names keyed by UUID. UUIDs which couldn't be resolved in time are left out
+     */
+    public Map<UUID, String> resolve(Collection<UUID> uuids, Lookup lookup) {
+        if (uuids == null) {
+            throw new IllegalArgumentException("uuids cannot be null.");
+        }
+        if (lookup == null) {
+            throw new IllegalArgumentException("lookup cannot be null.");
+        }
+
+        Map<UUID, String> retVal = new HashMap<>();
+        Map<UUID, CompletableFuture<String>> pending = new HashMap<>();
+        for (UUID uuid : uuids) {
+            if (retVal.containsKey(uuid) || pending.containsKey(uuid)) {
+                continue;
+            }
+
+            String name = cache.getIfPresent(uuid);
+            if (name != null) {
+                retVal.put(uuid, name);
+                continue;
+            }
+
+            CompletableFuture<String> created = new CompletableFuture<>();
+            CompletableFuture<String> future = inFlight.putIfAbsent(uuid, created);
+            if (future == null) {
+                // Only submitted once the future is visible to other callers
+                future = created;
+                submit(uuid, created, lookup);
+            }
+            pending.put(uuid, future);
+        }
+
+        // One deadline for the whole call, the lookups run concurrently
+        long deadline = System.nanoTime() + timeout;
+        int timedOut = 0;
+        for (Map.Entry<UUID, CompletableFuture<String>> kvp : pending.entrySet()) {
+            try {
+                String name = kvp.getValue().get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (name != null) {
+                    retVal.put(kvp.getKey(), name);
+                }
+            } catch (TimeoutException ignored) {
+                // Left running, so a later call can still pick up the cached name
+                timedOut++;
+            } catch (ExecutionException ex) {
+                logger.error("Could not get name for " + kvp.getKey() + ": " + ex.getCause().getMessage(), ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (timedOut > 0) {
+            logger.warn("Timed out looking up " + timedOut + " name(s).");
+        }
+        return retVal;
+    }
+
+    public void close() { workPool.shutdownNow(); }
+
+    private void submit(UUID uuid, CompletableFuture<String> future, Lookup lookup) {
+        try {
+            workPool.execute(() -> {
+                try {
+                    String name = lookup.getName(uuid);
+                    if (name != null) {
+                        cache.put(uuid, name);
+                    }
+                    future.complete(name);
+                } catch (IOException | RuntimeException ex) {
+                    future.completeExceptionally(ex);
+                } finally {
+                    inFlight.remove(uuid, future);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.remove(uuid, future);
+            future.completeExceptionally(ex);
+        }
+    }
+
+    public interface Lookup {
+        String getName(UUID uuid) throws IOException;
+    }
+}
@@ -1,9 +1,12 @@
 package me.egg82.altfinder.services;
 
-import java.util.HashSet;
-import java.util.Optional;
-import java.util.Set;
-import java.util.UUID;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import me.egg82.altfinder.core.PlayerData;
 import me.egg82.altfinder.core.SQLFetchResult;
 import me.egg82.altfinder.utils.RedisUtil;
@@ -13,6 +16,9 @@ import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.exceptions.JedisException;
 
 public class Redis {
@@ -23,107 +29,310 @@ public class Redis {
 
     private Redis() {}
 
+    // The scripts below build most of the keys they touch from ARGV rather than declaring them in KEYS.
+    // Redis Cluster routes a script by its KEYS alone, so these need a single Redis node (or a
+    // primary with replicas), not a cluster.
+
+    /**
+     * Reads a set and the info key for every member in one round trip.
+     * KEYS[1] is the set, each info key is ARGV[1] .. member .. ARGV[2].
+     * Returns member, info pairs with missing info as an empty string.
+     */
+    private static final LuaScript GET_INFO = new LuaScript(
+            "local retVal = {}\n" +
+            "for _, member in ipairs(redis.call('SMEMBERS', KEYS[1])) do\n" +
+            "  retVal[#retVal + 1] = member\n" +
+            "  retVal[#retVal + 1] = redis.call('GET', ARGV[1] .. member .. ARGV[2]) or ''\n" +
+            "end\n" +
+            "return retVal\n"
+    );
+
+    /**
+     * Deletes a set, its members' info keys and its value from each member's set, then publishes the delete.
+     * KEYS[1] is the set. Each member's set is ARGV[1] .. member, and ARGV[2] is removed from it.
+     * Each info key is ARGV[3] .. member .. ARGV[4]. ARGV[6] is published to ARGV[5].
+     * Scripts run atomically, so a dropped connection never leaves the sets half-deleted.
+     */
+    private static final LuaScript DELETE = new LuaScript(
+            "for _, member in ipairs(redis.call('SMEMBERS', KEYS[1])) do\n" +
+            "  redis.call('DEL', ARGV[3] .. member .. ARGV[4])\n" +
+            "  redis.call('SREM', ARGV[1] .. member, ARGV[2])\n" +
+            "end\n" +
+            "redis.call('DEL', KEYS[1])\n" +
+            "redis.call('PUBLISH', ARGV[5], ARGV[6])\n" +
+            "return 0\n"
+    );
+
+    /**
+     * Same as DELETE, for the compact layout. Keys, fields and ARGV[1..2] are binary.
+     * KEYS[1] is the hash. Each field's own hash is ARGV[1] .. field, and ARGV[2] is removed from it.
+     * ARGV[4] is published to ARGV[3].
+     */
+    private static final LuaScript DELETE_COMPACT = new LuaScript(
+            "for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do\n" +
+            "  redis.call('HDEL', ARGV[1] .. field, ARGV[2])\n" +
+            "end\n" +
+            "redis.call('DEL', KEYS[1])\n" +
+            "redis.call('PUBLISH', ARGV[3], ARGV[4])\n" +
+            "return 0\n"
+    );
+
+    /**
+     * Reads a compact hash and, with a TTL set, refreshes it along with the other side of each of its pairs.
+     * KEYS[1] is the hash. Each field's own hash is ARGV[1] .. field, and ARGV[2] is the TTL in milliseconds or 0.
+     * Returns field, value pairs as HGETALL does.
+     */
+    private static final LuaScript GET_COMPACT = new LuaScript(
+            "local retVal = redis.call('HGETALL', KEYS[1])\n" +
+            "local ttl = tonumber(ARGV[2])\n" +
+            "if ttl > 0 then\n" +
+            "  redis.call('PEXPIRE', KEYS[1], ttl)\n" +
+            "  for i = 1, #retVal, 2 do\n" +
+            "    redis.call('PEXPIRE', ARGV[1] .. retVal[i], ttl)\n" +
+            "  end\n" +
+            "end\n" +
+            "return retVal\n"
+    );
+
+    /**
+     * Writes one alt to both of its compact hashes with a TTL set.
+     * KEYS[1] is the IP hash, KEYS[2] the player hash. ARGV[1] is the IP hash's field, ARGV[2] the player hash's, ARGV[3] the value.
+     * ARGV[4] is the TTL in milliseconds. A hash which has expired is only created again if ARGV[5] (IP) or ARGV[6] (player) is 1,
+     * otherwise it would come back holding just this one alt and be read as complete. Left missing, the next read goes to storage.
+     */
+    private static final LuaScript WRITE_COMPACT = new LuaScript(
+            "local ttl = tonumber(ARGV[4])\n" +
+            "if ARGV[5] == '1' or redis.call('EXISTS', KEYS[1]) == 1 then\n" +
+            "  redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])\n" +
+            "  redis.call('PEXPIRE', KEYS[1], ttl)\n" +
+            "end\n" +
+            "if ARGV[6] == '1' or redis.call('EXISTS', KEYS[2]) == 1 then\n" +
+            "  redis.call('HSET', KEYS[2], ARGV[2], ARGV[3])\n" +
+            "  redis.call('PEXPIRE', KEYS[2], ttl)\n" +
+            "end\n" +
+            "return 0\n"
+    );
+
+    public enum Layout {
+        /**
+         * altfndr:ip:* and altfndr:uuid:* sets plus altfndr:info:* JSON strings, never expiring.
+         */
+        LEGACY,
+        /**
+         * One small hash per IP and per player, holding binary-packed info for each of its alts.
+         * Player hashes are keyed by the UUID's 16 bytes, IP hashes by the IP exactly as it was written.
+         * Both sides of a pair expire together after the TTL unless written or read again.
+         */
+        COMPACT
+    }
+
+    private static final byte[] COMPACT_IP_PREFIX = "altfndr:c:i:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] COMPACT_UUID_PREFIX = "altfndr:c:u:".getBytes(StandardCharsets.UTF_8);
+
+    private static volatile Layout layout = Layout.LEGACY;
+    private static volatile long ttl = 0L;
+
+    /**
+     * @param ttl how long a compact hash lives after it was last written or read, or 0 to never expire.
+     *            Ignored for the legacy layout.
+     */
+    public static void setLayout(Layout layout, long ttl, TimeUnit unit) {
+        if (layout == null) {
+            throw new IllegalArgumentException("layout cannot be null.");
+        }
+        if (ttl < 0L) {
+            throw new IllegalArgumentException("ttl cannot be < 0.");
+        }
+        Redis.layout = layout;
+        Redis.ttl = unit.toMillis(ttl);
+    }
+
+    private static volatile int flushSize = 500;
+
+    /**
+     * Sets how many records are written per pipeline flush in update/updateFromQueue.
+     */
+    public static void setFlushSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size cannot be <= 0.");
+        }
+        flushSize = size;
+    }
+
     public static void updateFromQueue(SQLFetchResult sqlResult) {
         try (Jedis redis = RedisUtil.getRedis()) {
             if (redis == null) {
                 return;
             }
 
+            int size = flushSize;
+            int batched = 0;
+            Pipeline pipeline = redis.pipelined();
             for (String key : sqlResult.getRemovedKeys()) {
-                redis.del(key);
+                if (layout == Layout.COMPACT) {
+                    deleteCompactKey(pipeline, key);
+                } else {
+                    pipeline.del(key);
+                }
                 if (key.indexOf('|') == -1) {
-                    redis.publish("altfndr-delete", key.substring(key.lastIndexOf(':') + 1));
+                    pipeline.publish("altfndr-delete", key.substring(key.lastIndexOf(':') + 1));
+                }
+                if (++batched >= size) {
+                    pipeline.sync();
+                    batched = 0;
                 }
             }
 
             for (PlayerData data : sqlResult.getData()) {
-                String ipKey = "altfndr:ip:" + data.getIP();
-                String uuidKey = "altfndr:uuid:" + data.getUUID();
-                String infoKey = "altfndr:info:" + data.getUUID() + "|" + data.getIP();
-
-                redis.sadd(ipKey, data.getUUID().toString());
-                redis.sadd(uuidKey, data.getIP());
-
-                JSONObject info = new JSONObject();
-                info.put("count", data.getCount());
-                info.put("server", data.getServer());
-                info.put("created", data.getCreated());
-                info.put("updated", data.getUpdated());
-
-                redis.set(infoKey, info.toJSONString());
-
-                info.put("ip", data.getIP());
-                info.put("uuid", data.getUUID().toString());
-                info.put("id", serverId.toString());
-
-                redis.publish("altfndr-info", info.toJSONString());
+                write(pipeline, data, false, false);
+                if (++batched >= size) {
+                    pipeline.sync();
+                    batched = 0;
+                }
             }
-        } catch (JedisException ex) {
+            pipeline.sync();
+        } catch (JedisException | IllegalArgumentException ex) {
             logger.error(ex.getMessage(), ex);
         }
     }
 
-    public static void update(Set<PlayerData> sqlResults) {
+    public static void update(Set<PlayerData> sqlResults) { update(sqlResults, false, false); }
+
+    /**
+     * Caches the result of a storage lookup by IP.
+     * Must hold every alt of each IP in it, since any of their hashes which are missing are created from it.
+     */
+    public static void fillIPs(Set<PlayerData> sqlResults) { update(sqlResults, true, false); }
+
+    /**
+     * Caches the result of a storage lookup by player.
+     * Must hold every alt of each player in it, since any of their hashes which are missing are created from it.
+     */
+    public static void fillPlayers(Set<PlayerData> sqlResults) { update(sqlResults, false, true); }
+
+    private static void update(Set<PlayerData> sqlResults, boolean completeIPs, boolean completePlayers) {
         try (Jedis redis = RedisUtil.getRedis()) {
             if (redis == null) {
                 return;
             }
 
+            int size = flushSize;
+            int batched = 0;
+            Pipeline pipeline = redis.pipelined();
             for (PlayerData data : sqlResults) {
-                String ipKey = "altfndr:ip:" + data.getIP();
-                String uuidKey = "altfndr:uuid:" + data.getUUID();
-                String infoKey = "altfndr:info:" + data.getUUID() + "|" + data.getIP();
-
-                redis.sadd(ipKey, data.getUUID().toString());
-                redis.sadd(uuidKey, data.getIP());
-
-                JSONObject info = new JSONObject();
-                info.put("count", data.getCount());
-                info.put("server", data.getServer());
-                info.put("created", data.getCreated());
-                info.put("updated", data.getUpdated());
-
-                redis.set(infoKey, info.toJSONString());
-
-                info.put("ip", data.getIP());
-                info.put("uuid", data.getUUID().toString());
-                info.put("id", serverId.toString());
-
-                redis.publish("altfndr-info", info.toJSONString());
+                write(pipeline, data, completeIPs, completePlayers, true);
+                if (++batched >= size) {
+                    pipeline.sync();
+                    batched = 0;
+                }
             }
-        } catch (JedisException ex) {
+            pipeline.sync();
+        } catch (JedisException | IllegalArgumentException ex) {
             logger.error(ex.getMessage(), ex);
         }
     }
 
-    public static void update(PlayerData data) {
+    public static void update(PlayerData data) { update(data, true); }
+
+    /**
+     * Caches a login without publishing it, for when it's already been sent over the messaging engines.
+     */
+    public static void cache(PlayerData data) { update(data, false); }
+
+    private static void update(PlayerData data, boolean publish) {
         try (Jedis redis = RedisUtil.getRedis()) {
             if (redis == null) {
                 return;
             }
 
-            String ipKey = "altfndr:ip:" + data.getIP();
-            String uuidKey = "altfndr:uuid:" + data.getUUID();
-            String infoKey = "altfndr:info:" + data.getUUID() + "|" + data.getIP();
+            Pipeline pipeline = redis.pipelined();
+            write(pipeline, data, false, false, publish);
+            pipeline.sync();
+        } catch (JedisException | IllegalArgumentException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @param createIP whether to create the IP's compact hash if it's expired, only safe when writing all of its alts
+     * @param createUUID whether to create the player's compact hash if it's expired, only safe when writing all of their alts
+     * @param publish whether to publish the data to other servers
+     */
+    private static void write(Pipeline pipeline, PlayerData data, boolean createIP, boolean createUUID, boolean publish) {
+        JSONObject info = new JSONObject();
+        info.put("count", data.getCount());
+        info.put("server", data.getServer());
+        info.put("created", data.getCreated());
+        info.put("updated", data.getUpdated());
+
+        if (layout == Layout.COMPACT) {
+            byte[] ipBytes = data.getIP().getBytes(StandardCharsets.UTF_8);
+            byte[] uuidBytes = getUUIDBytes(data.getUUID());
+            byte[] ipKey = concat(COMPACT_IP_PREFIX, ipBytes);
+            byte[] uuidKey = concat(COMPACT_UUID_PREFIX, uuidBytes);
+            byte[] value = packInfo(data);
+
+            long t = ttl;
+            if (t > 0L) {
+                // EVAL rather than EVALSHA, a pipeline can't fall back on NOSCRIPT. Redis caches the compiled script either way
+                pipeline.eval(WRITE_COMPACT.source.getBytes(StandardCharsets.UTF_8), Arrays.asList(ipKey, uuidKey), Arrays.asList(
+                        uuidBytes,
+                        ipBytes,
+                        value,
+                        String.valueOf(t).getBytes(StandardCharsets.UTF_8),
+                        (createIP ? "1" : "0").getBytes(StandardCharsets.UTF_8),
+                        (createUUID ? "1" : "0").getBytes(StandardCharsets.UTF_8)
+                ));
+            } else {
+                // Never expire, so never incomplete
+                pipeline.hset(ipKey, uuidBytes, value);
+                pipeline.hset(uuidKey, ipBytes, value);
+            }
+        } else {
+            writeLegacy(pipeline, data, info);
+        }
 
-            redis.sadd(ipKey, data.getUUID().toString());
-            redis.sadd(uuidKey, data.getIP());
+        if (!publish) {
+            return;
+        }
 
-            JSONObject info = new JSONObject();
-            info.put("count", data.getCount());
-            info.put("server", data.getServer());
-            info.put("created", data.getCreated());
-            info.put("updated", data.getUpdated());
+        info.put("ip", data.getIP());
+        info.put("uuid", data.getUUID().toString());
+        info.put("id", serverId.toString());
 
-            redis.set(infoKey, info.toJSONString());
+        pipeline.publish("altfndr-info", info.toJSONString());
+    }
 
-            info.put("ip", data.getIP());
-            info.put("uuid", data.getUUID().toString());
-            info.put("id", serverId.toString());
+    private static void writeLegacy(Pipeline pipeline, PlayerData data, JSONObject info) {
+        String ipKey = "altfndr:ip:" + data.getIP();
+        String uuidKey = "altfndr:uuid:" + data.getUUID();
+        String infoKey = "altfndr:info:" + data.getUUID() + "|" + data.getIP();
 
-            redis.publish("altfndr-info", info.toJSONString());
-        } catch (JedisException ex) {
-            logger.error(ex.getMessage(), ex);
+        pipeline.sadd(ipKey, data.getUUID().toString());
+        pipeline.sadd(uuidKey, data.getIP());
+        pipeline.set(infoKey, info.toJSONString());
+    }
+
+    /**
+     * Translates a legacy key removed from SQL into its compact equivalent.
+     */
+    private static void deleteCompactKey(Pipeline pipeline, String key) {
+        String value = key.substring(key.lastIndexOf(':') + 1);
+        int split = value.indexOf('|');
+        try {
+            if (split != -1) {
+                // altfndr:info:<uuid>|<ip>
+                byte[] uuidBytes = getUUIDBytes(UUID.fromString(value.substring(0, split)));
+                byte[] ipBytes = value.substring(split + 1).getBytes(StandardCharsets.UTF_8);
+                pipeline.hdel(concat(COMPACT_IP_PREFIX, ipBytes), uuidBytes);
+                pipeline.hdel(concat(COMPACT_UUID_PREFIX, uuidBytes), ipBytes);
+            } else if (key.startsWith("altfndr:uuid:")) {
+                pipeline.del(concat(COMPACT_UUID_PREFIX, getUUIDBytes(UUID.fromString(value))));
+            } else {
+                pipeline.del(concat(COMPACT_IP_PREFIX, value.getBytes(StandardCharsets.UTF_8)));
+            }
+        } catch (IllegalArgumentException ex) {
+            logger.warn("Could not remove key \"" + key + "\": " + ex.getMessage());
         }
     }
 
@@ -133,21 +342,16 @@ public class Redis {
                 return;
             }
 
-            String ipKey = "altfndr:ip:" + ip;
-
-            Set<String> data = redis.smembers(ipKey);
-            if (data != null) {
-                for (String uuid : data) {
-                    String uuidKey = "altfndr:uuid:" + uuid;
-                    String infoKey = "altfndr:info:" + uuid + "|" + ip;
-                    redis.del(infoKey);
-                    redis.srem(uuidKey, ip);
-                }
+            if (layout == Layout.COMPACT) {
+                // Fields are UUIDs, each with its own hash holding this IP
+                byte[] ipBytes = ip.getBytes(StandardCharsets.UTF_8);
+                evalBinary(redis, DELETE_COMPACT, Collections.singletonList(concat(COMPACT_IP_PREFIX, ipBytes)), Arrays.asList(COMPACT_UUID_PREFIX, ipBytes, "altfndr-delete".getBytes(StandardCharsets.UTF_8), ip.getBytes(StandardCharsets.UTF_8)));
+                return;
             }
-            redis.del(ipKey);
 
-            redis.publish("altfndr-delete", ip);
-        } catch (JedisException ex) {
+            // Members are UUIDs, info keys are altfndr:info:<uuid>|<ip>
+            eval(redis, DELETE, Collections.singletonList("altfndr:ip:" + ip), Arrays.asList("altfndr:uuid:", ip, "altfndr:info:", "|" + ip, "altfndr-delete", ip));
+        } catch (JedisException | IllegalArgumentException ex) {
             logger.error(ex.getMessage(), ex);
         }
     }
@@ -158,20 +362,15 @@ public class Redis {
                 return;
             }
 
-            String uuidKey = "altfndr:uuid:" + uuid;
-
-            Set<String> data = redis.smembers(uuidKey);
-            if (data != null) {
-                for (String ip : data) {
-                    String ipKey = "altfndr:ip:" + ip;
-                    String infoKey = "altfndr:info:" + uuid + "|" + ip;
-                    redis.del(infoKey);
-                    redis.srem(ipKey, uuid.toString());
-                }
+            if (layout == Layout.COMPACT) {
+                // Fields are IPs, each with its own hash holding this UUID
+                byte[] uuidBytes = getUUIDBytes(uuid);
+                evalBinary(redis, DELETE_COMPACT, Collections.singletonList(concat(COMPACT_UUID_PREFIX, uuidBytes)), Arrays.asList(COMPACT_IP_PREFIX, uuidBytes, "altfndr-delete".getBytes(StandardCharsets.UTF_8), uuid.toString().getBytes(StandardCharsets.UTF_8)));
+                return;
             }
-            redis.del(uuidKey);
 
-            redis.publish("altfndr-delete", uuid.toString());
+            // Members are IPs, info keys are altfndr:info:<uuid>|<ip>
+            eval(redis, DELETE, Collections.singletonList("altfndr:uuid:" + uuid), Arrays.asList("altfndr:ip:", uuid.toString(), "altfndr:info:" + uuid + "|", "", "altfndr-delete", uuid.toString()));
         } catch (JedisException ex) {
             logger.error(ex.getMessage(), ex);
         }
@@ -181,31 +380,34 @@ public class Redis {
         Set<PlayerData> result = new HashSet<>();
 
         try (Jedis redis = RedisUtil.getRedis()) {
-            if (redis != null) {
-                String ipKey = "altfndr:ip:" + ip;
-
-                // Grab IP info
-                Set<String> data = redis.smembers(ipKey);
-                if (data != null) {
-                    for (String uuid : data) {
-                        String infoKey = "altfndr:info:" + uuid + "|" + ip;
-
-                        String infoString = redis.get(infoKey);
-                        if (infoString == null) {
-                            continue;
-                        }
-
-                        try {
-                            JSONObject info = JSONUtil.parseObject(infoString);
-                            long count = ((Number) info.get("count")).longValue();
-                            String server = (String) info.get("server");
-                            long created = ((Number) info.get("created")).longValue();
-                            long updated = ((Number) info.get("updated")).longValue();
-
-                            result.add(new PlayerData(UUID.fromString(uuid), ip, count, server, created, updated));
-                        } catch (ParseException | ClassCastException ex) {
-                            logger.error(ex.getMessage(), ex);
-                        }
+            if (redis != null && layout == Layout.COMPACT) {
+                for (Map.Entry<byte[], byte[]> kvp : getCompact(redis, concat(COMPACT_IP_PREFIX, ip.getBytes(StandardCharsets.UTF_8)), COMPACT_UUID_PREFIX).entrySet()) {
+                    UUID uuid;
+                    try {
+                        uuid = getUUID(kvp.getKey());
+                    } catch (IllegalArgumentException ex) {
+                        logger.warn("Skipping corrupt member of " + ip + ": " + ex.getMessage());
+                        continue;
+                    }
+                    PlayerData d = unpackInfo(uuid, ip, kvp.getValue());
+                    if (d != null) {
+                        result.add(d);
+                    }
+                }
+            } else if (redis != null) {
+                // Members are UUIDs, info keys are altfndr:info:<uuid>|<ip>
+                List<String> data = eval(redis, GET_INFO, Collections.singletonList("altfndr:ip:" + ip), Arrays.asList("altfndr:info:", "|" + ip));
+                for (int i = 0; i + 1 < data.size(); i += 2) {
+                    UUID uuid;
+                    try {
+                        uuid = UUID.fromString(data.get(i));
+                    } catch (IllegalArgumentException ex) {
+                        logger.warn("Skipping corrupt member \"" + data.get(i) + "\" of " + ip + ".");
+                        continue;
+                    }
+                    PlayerData d = getData(uuid, ip, data.get(i + 1));
+                    if (d != null) {
+                        result.add(d);
                     }
                 }
             }
@@ -220,38 +422,385 @@ public class Redis {
         Set<PlayerData> result = new HashSet<>();
 
         try (Jedis redis = RedisUtil.getRedis()) {
-            if (redis != null) {
-                String ipKey = "altfndr:uuid:" + uuid;
+            if (redis != null && layout == Layout.COMPACT) {
+                for (Map.Entry<byte[], byte[]> kvp : getCompact(redis, concat(COMPACT_UUID_PREFIX, getUUIDBytes(uuid)), COMPACT_IP_PREFIX).entrySet()) {
+                    PlayerData d = unpackInfo(uuid, new String(kvp.getKey(), StandardCharsets.UTF_8), kvp.getValue());
+                    if (d != null) {
+                        result.add(d);
+                    }
+                }
+            } else if (redis != null) {
+                // Members are IPs, info keys are altfndr:info:<uuid>|<ip>
+                List<String> data = eval(redis, GET_INFO, Collections.singletonList("altfndr:uuid:" + uuid), Arrays.asList("altfndr:info:" + uuid + "|", ""));
+                for (int i = 0; i + 1 < data.size(); i += 2) {
+                    PlayerData d = getData(uuid, data.get(i), data.get(i + 1));
+                    if (d != null) {
+                        result.add(d);
+                    }
+                }
+            }
+        } catch (JedisException | IllegalArgumentException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
 
-                // Grab IP info
-                Set<String> data = redis.smembers(ipKey);
-                if (data != null) {
-                    for (String ip : data) {
-                        String infoKey = "altfndr:info:" + uuid + "|" + ip;
+        return result.isEmpty() ? Optional.empty() : Optional.of(result);
+    }
 
-                        String infoString = redis.get(infoKey);
-                        if (infoString == null) {
+    /**
+     * getResult for many IPs in one round trip.
+     * Corrupt members are skipped on their own rather than failing the whole batch.
+     * @return the data for each IP found, IPs which weren't found are left out
+     */
+    public static Map<String, Set<PlayerData>> getIPResults(Collection<String> ips) {
+        Map<String, Set<PlayerData>> retVal = new HashMap<>();
+        List<String> keys = new ArrayList<>(ips);
+        if (keys.isEmpty()) {
+            return retVal;
+        }
+
+        try (Jedis redis = RedisUtil.getRedis()) {
+            if (redis != null && layout == Layout.COMPACT) {
+                List<byte[]> hashes = new ArrayList<>();
+                for (String ip : keys) {
+                    hashes.add(concat(COMPACT_IP_PREFIX, ip.getBytes(StandardCharsets.UTF_8)));
+                }
+                List<Map<byte[], byte[]>> data = getCompact(redis, hashes, COMPACT_UUID_PREFIX);
+                for (int i = 0; i < keys.size(); i++) {
+                    Set<PlayerData> result = new HashSet<>();
+                    for (Map.Entry<byte[], byte[]> kvp : data.get(i).entrySet()) {
+                        UUID uuid;
+                        try {
+                            uuid = getUUID(kvp.getKey());
+                        } catch (IllegalArgumentException ex) {
+                            logger.warn("Skipping corrupt member of " + keys.get(i) + ": " + ex.getMessage());
                             continue;
                         }
-
+                        PlayerData d = unpackInfo(uuid, keys.get(i), kvp.getValue());
+                        if (d != null) {
+                            result.add(d);
+                        }
+                    }
+                    if (!result.isEmpty()) {
+                        retVal.put(keys.get(i), result);
+                    }
+                }
+            } else if (redis != null) {
+                List<List<String>> scriptKeys = new ArrayList<>();
+                List<List<String>> scriptArgs = new ArrayList<>();
+                for (String ip : keys) {
+                    scriptKeys.add(Collections.singletonList("altfndr:ip:" + ip));
+                    scriptArgs.add(Arrays.asList("altfndr:info:", "|" + ip));
+                }
+                List<List<String>> data = evalAll(redis, GET_INFO, scriptKeys, scriptArgs);
+                for (int i = 0; i < keys.size(); i++) {
+                    Set<PlayerData> result = new HashSet<>();
+                    List<String> d = data.get(i);
+                    for (int j = 0; j + 1 < d.size(); j += 2) {
+                        UUID uuid;
                         try {
-                            JSONObject info = JSONUtil.parseObject(infoString);
-                            long count = ((Number) info.get("count")).longValue();
-                            String server = (String) info.get("server");
-                            long created = ((Number) info.get("created")).longValue();
-                            long updated = ((Number) info.get("updated")).longValue();
-
-                            result.add(new PlayerData(uuid, ip, count, server, created, updated));
-                        } catch (ParseException | ClassCastException ex) {
-                            logger.error(ex.getMessage(), ex);
+                            uuid = UUID.fromString(d.get(j));
+                        } catch (IllegalArgumentException ex) {
+                            logger.warn("Skipping corrupt member \"" + d.get(j) + "\" of " + keys.get(i) + ".");
+                            continue;
+                        }
+                        PlayerData p = getData(uuid, keys.get(i), d.get(j + 1));
+                        if (p != null) {
+                            result.add(p);
                         }
                     }
+                    if (!result.isEmpty()) {
+                        retVal.put(keys.get(i), result);
+                    }
                 }
             }
         } catch (JedisException ex) {
             logger.error(ex.getMessage(), ex);
         }
 
-        return result.isEmpty() ? Optional.empty() : Optional.of(result);
+        return retVal;
+    }
+
+    /**
+     * getResult for many players in one round trip.
+     * Corrupt members are skipped on their own rather than failing the whole batch.
+     * @return the data for each player found, players who weren't found are left out
+     */
+    public static Map<UUID, Set<PlayerData>> getPlayerResults(Collection<UUID> uuids) {
+        Map<UUID, Set<PlayerData>> retVal = new HashMap<>();
+        List<UUID> keys = new ArrayList<>(uuids);
+        if (keys.isEmpty()) {
+            return retVal;
+        }
+
+        try (Jedis redis = RedisUtil.getRedis()) {
+            if (redis != null && layout == Layout.COMPACT) {
+                List<byte[]> hashes = new ArrayList<>();
+                for (UUID uuid : keys) {
+                    hashes.add(concat(COMPACT_UUID_PREFIX, getUUIDBytes(uuid)));
+                }
+                List<Map<byte[], byte[]>> data = getCompact(redis, hashes, COMPACT_IP_PREFIX);
+                for (int i = 0; i < keys.size(); i++) {
+                    Set<PlayerData> result = new HashSet<>();
+                    for (Map.Entry<byte[], byte[]> kvp : data.get(i).entrySet()) {
+                        PlayerData d = unpackInfo(keys.get(i), new String(kvp.getKey(), StandardCharsets.UTF_8), kvp.getValue());
+                        if (d != null) {
+                            result.add(d);
+                        }
+                    }
+                    if (!result.isEmpty()) {
+                        retVal.put(keys.get(i), result);
+                    }
+                }
+            } else if (redis != null) {
+                List<List<String>> scriptKeys = new ArrayList<>();
+                List<List<String>> scriptArgs = new ArrayList<>();
+                for (UUID uuid : keys) {
+                    scriptKeys.add(Collections.singletonList("altfndr:uuid:" + uuid));
+                    scriptArgs.add(Arrays.asList("altfndr:info:" + uuid + "|", ""));
+                }
+                List<List<String>> data = evalAll(redis, GET_INFO, scriptKeys, scriptArgs);
+                for (int i = 0; i < keys.size(); i++) {
+                    Set<PlayerData> result = new HashSet<>();
+                    List<String> d = data.get(i);
+                    for (int j = 0; j + 1 < d.size(); j += 2) {
+                        PlayerData p = getData(keys.get(i), d.get(j), d.get(j + 1));
+                        if (p != null) {
+                            result.add(p);
+                        }
+                    }
+                    if (!result.isEmpty()) {
+                        retVal.put(keys.get(i), result);
+                    }
+                }
+            }
+        } catch (JedisException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Reads a compact hash, refreshing its TTL and its pairs' in the same round trip.
+     * @param pairPrefix the key prefix of the hashes on the other side of the hash's fields
+     */
+    private static Map<byte[], byte[]> getCompact(Jedis redis, byte[] key, byte[] pairPrefix) {
+        return getCompact(redis, Collections.singletonList(key), pairPrefix).get(0);
+    }
+
+    /**
+     * Reads many compact hashes, refreshing their TTLs and their pairs' in the same round trip.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<byte[], byte[]>> getCompact(Jedis redis, List<byte[]> keys, byte[] pairPrefix) {
+        byte[] sha = GET_COMPACT.sha.getBytes(StandardCharsets.UTF_8);
+        byte[] ttlBytes = String.valueOf(ttl).getBytes(StandardCharsets.UTF_8);
+
+        List<Object> data;
+        try {
+            data = evalAllBinary(redis, sha, keys, pairPrefix, ttlBytes);
+        } catch (JedisDataException ex) {
+            if (ex.getMessage() == null || !ex.getMessage().startsWith("NOSCRIPT")) {
+                throw ex;
+            }
+            // Not cached on this server yet, load it and go again
+            redis.scriptLoad(GET_COMPACT.source);
+            data = evalAllBinary(redis, sha, keys, pairPrefix, ttlBytes);
+        }
+
+        List<Map<byte[], byte[]>> retVal = new ArrayList<>();
+        for (Object d : data) {
+            Map<byte[], byte[]> hash = new LinkedHashMap<>();
+            if (d instanceof List) {
+                List<byte[]> pairs = (List<byte[]>) d;
+                for (int i = 0; i + 1 < pairs.size(); i += 2) {
+                    hash.put(pairs.get(i), pairs.get(i + 1));
+                }
+            }
+            retVal.add(hash);
+        }
+        return retVal;
+    }
+
+    private static List<Object> evalAllBinary(Jedis redis, byte[] sha, List<byte[]> keys, byte[] pairPrefix, byte[] ttlBytes) {
+        Pipeline pipeline = redis.pipelined();
+        List<Response<Object>> responses = new ArrayList<>();
+        for (byte[] key : keys) {
+            responses.add(pipeline.evalsha(sha, Collections.singletonList(key), Arrays.asList(pairPrefix, ttlBytes)));
+        }
+        pipeline.sync();
+
+        List<Object> retVal = new ArrayList<>();
+        for (Response<Object> response : responses) {
+            // Throws any error the script hit
+            retVal.add(response.get());
+        }
+        return retVal;
+    }
+
+    /**
+     * varint count, varint created, varint updated, then the server name as UTF-8.
+     * Small enough to keep hashes in Redis' compact encoding for typical server names.
+     */
+    private static byte[] packInfo(PlayerData data) {
+        byte[] server = data.getServer() != null ? data.getServer().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        ByteBuffer buffer = ByteBuffer.allocate(30 + server.length);
+        putVarLong(buffer, data.getCount());
+        putVarLong(buffer, data.getCreated());
+        putVarLong(buffer, data.getUpdated());
+        buffer.put(server);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static PlayerData unpackInfo(UUID uuid, String ip, byte[] value) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(value);
+            long count = getVarLong(buffer);
+            long created = getVarLong(buffer);
+            long updated = getVarLong(buffer);
+            String server = new String(value, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+            return new PlayerData(uuid, ip, count, server, created, updated);
+        } catch (BufferUnderflowException ex) {
+            logger.error("Alt info for " + uuid + " (" + ip + ") is corrupt.", ex);
+            return null;
+        }
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            buffer.put((byte) ((value & 0x7FL) | 0x80L));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long retVal = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            retVal |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return retVal;
+    }
+
+    private static byte[] getUUIDBytes(UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    private static UUID getUUID(byte[] bytes) {
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("uuid is invalid.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] retVal = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, retVal, first.length, second.length);
+        return retVal;
+    }
+
+    private static PlayerData getData(UUID uuid, String ip, String infoString) {
+        if (infoString.isEmpty()) {
+            return null;
+        }
+
+        try {
+            JSONObject info = JSONUtil.parseObject(infoString);
+            long count = ((Number) info.get("count")).longValue();
+            String server = (String) info.get("server");
+            long created = ((Number) info.get("created")).longValue();
+            long updated = ((Number) info.get("updated")).longValue();
+
+            return new PlayerData(uuid, ip, count, server, created, updated);
+        } catch (ParseException | ClassCastException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> eval(Jedis redis, LuaScript script, List<String> keys, List<String> args) {
+        Object retVal;
+        try {
+            retVal = redis.evalsha(script.sha, keys, args);
+        } catch (JedisDataException ex) {
+            if (ex.getMessage() == null || !ex.getMessage().startsWith("NOSCRIPT")) {
+                throw ex;
+            }
+            // Not cached on this server yet, EVAL caches it for next time
+            retVal = redis.eval(script.source, keys, args);
+        }
+        return retVal instanceof List ? (List<String>) retVal : Collections.emptyList();
+    }
+
+    /**
+     * Runs the script once per keys/args pair, pipelined into one round trip.
+     */
+    private static List<List<String>> evalAll(Jedis redis, LuaScript script, List<List<String>> keys, List<List<String>> args) {
+        try {
+            return evalAllSha(redis, script, keys, args);
+        } catch (JedisDataException ex) {
+            if (ex.getMessage() == null || !ex.getMessage().startsWith("NOSCRIPT")) {
+                throw ex;
+            }
+            // Not cached on this server yet, load it and go again
+            redis.scriptLoad(script.source);
+            return evalAllSha(redis, script, keys, args);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<List<String>> evalAllSha(Jedis redis, LuaScript script, List<List<String>> keys, List<List<String>> args) {
+        Pipeline pipeline = redis.pipelined();
+        List<Response<Object>> responses = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            responses.add(pipeline.evalsha(script.sha, keys.get(i), args.get(i)));
+        }
+        pipeline.sync();
+
+        List<List<String>> retVal = new ArrayList<>();
+        for (Response<Object> response : responses) {
+            // Throws any error the script hit
+            Object r = response.get();
+            retVal.add(r instanceof List ? (List<String>) r : Collections.emptyList());
+        }
+        return retVal;
+    }
+
+    private static void evalBinary(Jedis redis, LuaScript script, List<byte[]> keys, List<byte[]> args) {
+        try {
+            redis.evalsha(script.sha.getBytes(StandardCharsets.UTF_8), keys, args);
+        } catch (JedisDataException ex) {
+            if (ex.getMessage() == null || !ex.getMessage().startsWith("NOSCRIPT")) {
+                throw ex;
+            }
+            redis.eval(script.source.getBytes(StandardCharsets.UTF_8), keys, args);
+        }
+    }
+
+    private static class LuaScript {
+        private final String source;
+        private final String sha;
+
+        private LuaScript(String source) {
+            this.source = source;
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+                StringBuilder builder = new StringBuilder(digest.length * 2);
+                for (byte b : digest) {
+                    builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                    builder.append(Character.forDigit(b & 0xF, 16));
+                }
+                this.sha = builder.toString();
+            } catch (NoSuchAlgorithmException ex) {
+                // Every JVM has SHA-1
+                throw new IllegalStateException(ex);
+            }
+        }
     }
 }
@@ -0,0 +1,8 @@
+package me.egg82.altfinder.services;
+
+import me.egg82.altfinder.storage.Storage;
+import me.egg82.altfinder.storage.StorageException;
+
+public interface StorageFunction<T> {
+    T apply(Storage storage) throws StorageException;
+}
@@ -0,0 +1,252 @@
+package me.egg82.altfinder.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import me.egg82.altfinder.core.AltResult;
+import me.egg82.altfinder.extended.CachedConfigValues;
+import me.egg82.altfinder.storage.Storage;
+import me.egg82.altfinder.storage.StorageException;
+import me.egg82.altfinder.utils.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads from the first ("master") storage engine, falling through to the next engine
+ * in storage order whenever an engine fails with an automatically-recoverable exception.
+ * With a hedge delay set, a second read is also sent to the next engine if the current one
+ * hasn't answered within that time, and whichever answers first wins.
+ * Once an alt graph has loaded, IP and player lookups are answered from it instead.
+ */
+public class StorageReader {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final long hedgeDelay;
+    private final AltLookupCache cache;
+    private final AltGraph graph;
+    private final ExecutorService workPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("AltFinder-StorageRead-%d").setDaemon(true).build());
+
+    public StorageReader(long hedgeDelay, TimeUnit unit, AltLookupCache cache) { this(hedgeDelay, unit, cache, null); }
+
+    /**
+     * @param hedgeDelay how long to wait on an engine before also asking the next one, or 0 to disable hedged reads.
+     *                   Around the master's p95 read latency is a good starting point.
+     * @param cache the near-cache to serve getByIP/getByPlayer from, or null for none
+     * @param graph the alt graph to serve IP and player lookups from once loaded, or null for none
+     */
+    public StorageReader(long hedgeDelay, TimeUnit unit, AltLookupCache cache, AltGraph graph) {
+        if (hedgeDelay < 0L) {
+            throw new IllegalArgumentException("hedgeDelay cannot be < 0.");
+        }
+        this.hedgeDelay = unit.toMillis(hedgeDelay);
+        this.cache = cache;
+        this.graph = graph;
+    }
+
+    public Set<AltResult> getByIP(String ip, int days) throws StorageException {
+        if (graph != null && graph.isLoaded()) {
+            return graph.getByIP(ip, getSince(days));
+        }
+        if (cache == null) {
+            return read(s -> s.getByIP(ip, days));
+        }
+        return cache.getByIP(ip, days, () -> read(s -> s.getByIP(ip, days)));
+    }
+
+    public Set<AltResult> getByPlayer(UUID playerID, int days) throws StorageException {
+        if (graph != null && graph.isLoaded()) {
+            return graph.getByPlayer(playerID, getSince(days));
+        }
+        if (cache == null) {
+            return read(s -> s.getByPlayer(playerID, days));
+        }
+        return cache.getByPlayer(playerID, days, () -> read(s -> s.getByPlayer(playerID, days)));
+    }
+
+    /**
+     * Batch reads skip the near-cache, which only holds single lookups.
+     */
+    public Set<AltResult> getByIPs(Collection<String> ips, int days) throws StorageException {
+        if (graph != null && graph.isLoaded()) {
+            Set<AltResult> retVal = new LinkedHashSet<>();
+            for (String ip : ips) {
+                retVal.addAll(graph.getByIP(ip, getSince(days)));
+            }
+            return retVal;
+        }
+        return read(s -> s.getByIPs(ips, days));
+    }
+
+    public Set<AltResult> getByPlayers(Collection<UUID> playerIDs, int days) throws StorageException {
+        if (graph != null && graph.isLoaded()) {
+            Set<AltResult> retVal = new LinkedHashSet<>();
+            for (UUID playerID : playerIDs) {
+                retVal.addAll(graph.getByPlayer(playerID, getSince(days)));
+            }
+            return retVal;
+        }
+        return read(s -> s.getByPlayers(playerIDs, days));
+    }
+
+    public Map<UUID, Integer> getLinkedPlayers(UUID playerID, int maxDepth, int maxPlayers) throws StorageException {
+        if (graph != null && graph.isLoaded()) {
+            Map<UUID, Integer> retVal = new LinkedHashMap<>();
+            long longPlayerID = graph.getLongPlayerID(playerID);
+            if (longPlayerID < 0L) {
+                return retVal;
+            }
+
+            // Linked players aren't limited by age
+            AltGraph.Walk walk = graph.walk(longPlayerID, maxDepth, maxPlayers, 0L);
+            for (int i = 0; i < walk.getPlayers().length; i++) {
+                UUID linked = graph.getPlayerID(walk.getPlayers()[i]);
+                if (linked != null) {
+                    retVal.put(linked, walk.getHops()[i]);
+                }
+            }
+            return retVal;
+        }
+        return read(s -> s.getLinkedPlayers(playerID, maxDepth, maxPlayers));
+    }
+
+    public <T> T read(StorageFunction<T> function) throws StorageException {
+        List<Storage> storage = getStorage();
+        if (storage.isEmpty()) {
+            throw new StorageException(false, "No storage engines are available.");
+        }
+
+        StorageException lastEx = null;
+        int i = 0;
+        while (i < storage.size()) {
+            Storage current = storage.get(i);
+            Storage next = hedgeDelay > 0L && i + 1 < storage.size() ? storage.get(i + 1) : null;
+
+            try {
+                return next == null ? function.apply(current) : hedgedRead(current, next, function);
+            } catch (HedgeFailedException ex) {
+                // Both engines were tried
+                lastEx = ex.getStorageException();
+                i += 2;
+            } catch (StorageException ex) {
+                lastEx = ex;
+                i++;
+            }
+
+            if (!lastEx.isAutomaticallyRecoverable()) {
+                throw lastEx;
+            }
+            if (i < storage.size()) {
+                logger.warn("Storage engine read failed, falling back to the next engine: " + lastEx.getMessage());
+            }
+        }
+
+        throw lastEx;
+    }
+
+    public void close() { workPool.shutdownNow(); }
+
+    private <T> T hedgedRead(Storage first, Storage second, StorageFunction<T> function) throws StorageException {
+        CompletableFuture<T> firstFuture = supply(first, function);
+
+        try {
+            return firstFuture.get(hedgeDelay, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ignored) {
+            // Master is slow, hedge below
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(true, ex);
+        }
+
+        if (ConfigUtil.getDebugOrFalse()) {
+            logger.info("Storage engine read took longer than " + hedgeDelay + "ms, hedging with the next engine.");
+        }
+
+        CompletableFuture<T> secondFuture = supply(second, function);
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger(0);
+        BiConsumer<T, Throwable> onDone = (v, ex) -> {
+            if (ex == null) {
+                winner.complete(v);
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(ex);
+            }
+        };
+        firstFuture.whenComplete(onDone);
+        secondFuture.whenComplete(onDone);
+
+        try {
+            return winner.get();
+        } catch (ExecutionException ex) {
+            throw new HedgeFailedException(unwrap(ex));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(true, ex);
+        } finally {
+            // Whoever lost no longer matters
+            firstFuture.cancel(true);
+            secondFuture.cancel(true);
+        }
+    }
+
+    private <T> CompletableFuture<T> supply(Storage storage, StorageFunction<T> function) {
+        CompletableFuture<T> retVal = new CompletableFuture<>();
+        try {
+            Future<?> task = workPool.submit(() -> {
+                try {
+                    retVal.complete(function.apply(storage));
+                } catch (StorageException | RuntimeException ex) {
+                    retVal.completeExceptionally(ex);
+                }
+            });
+            // Cancelling a CompletableFuture doesn't interrupt anything, so pass it on to the thread doing the read
+            retVal.whenComplete((v, ex) -> {
+                if (retVal.isCancelled()) {
+                    task.cancel(true);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            retVal.completeExceptionally(new StorageException(false, "Storage reader is closed.", ex));
+        }
+        return retVal;
+    }
+
+    private long getSince(int days) { return System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days); }
+
+    private StorageException unwrap(ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof StorageException ? (StorageException) cause : new StorageException(false, cause);
+    }
+
+    private List<Storage> getStorage() throws StorageException {
+        Optional<CachedConfigValues> cachedConfig = ConfigUtil.getCachedConfig();
+        if (!cachedConfig.isPresent()) {
+            throw new StorageException(false, "Could not get cached config.");
+        }
+
+        List<Storage> retVal = new ArrayList<>();
+        for (Storage s : cachedConfig.get().getStorage()) {
+            if (!s.isClosed()) {
+                retVal.add(s);
+            }
+        }
+        return retVal;
+    }
+
+    private static class HedgeFailedException extends StorageException {
+        private final StorageException storageException;
+
+        private HedgeFailedException(StorageException cause) {
+            super(cause.isAutomaticallyRecoverable(), cause.getMessage(), cause);
+            this.storageException = cause;
+        }
+
+        private StorageException getStorageException() { return storageException; }
+    }
+}
@@ -0,0 +1,223 @@
+package me.egg82.altfinder.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import me.egg82.altfinder.core.PostAltResult;
+import me.egg82.altfinder.extended.CachedConfigValues;
+import me.egg82.altfinder.storage.Storage;
+import me.egg82.altfinder.storage.StorageException;
+import me.egg82.altfinder.utils.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fans writes out to every configured storage engine at once.
+ * Each engine has its own executor, so a slow engine only ever delays itself.
+ * Callers wait for the first engine (in storage order) that succeeds, the rest finish in the background.
+ */
+public class StorageWriter {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<Storage, EngineState> states = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final int threadsPerEngine;
+    private final int queuePerEngine;
+    private final AltLookupCache cache;
+    private final AltGraph graph;
+
+    public StorageWriter(int threadsPerEngine, AltLookupCache cache) { this(threadsPerEngine, 10000, cache, null); }
+
+    /**
+     * @param threadsPerEngine the number of concurrent writes allowed per engine.
+     *                         More than one lets engines which group-commit (eg. MySQL) batch concurrent posts.
+     * @param queuePerEngine the number of writes which may wait on an engine. Writes past this are dropped for that engine
+     * @param cache the near-cache to invalidate on posts, or null for none
+     * @param graph the alt graph to add posts to, or null for none
+     */
+    public StorageWriter(int threadsPerEngine, int queuePerEngine, AltLookupCache cache, AltGraph graph) {
+        if (threadsPerEngine <= 0) {
+            throw new IllegalArgumentException("threadsPerEngine cannot be <= 0.");
+        }
+        if (queuePerEngine <= 0) {
+            throw new IllegalArgumentException("queuePerEngine cannot be <= 0.");
+        }
+        this.threadsPerEngine = threadsPerEngine;
+        this.queuePerEngine = queuePerEngine;
+        this.cache = cache;
+        this.graph = graph;
+    }
+
+    public PostAltResult post(UUID playerID, String ip, long time) throws StorageException {
+        try {
+            PostAltResult retVal = write(s -> s.post(playerID, ip, time));
+            if (graph != null) {
+                graph.add(retVal);
+            }
+            return retVal;
+        } finally {
+            if (cache != null) {
+                cache.invalidate(ip, playerID);
+            }
+        }
+    }
+
+    public void delete(String ip) throws StorageException {
+        write(s -> {
+            s.delete(ip);
+            return null;
+        });
+    }
+
+    public void delete(UUID playerID) throws StorageException {
+        write(s -> {
+            s.delete(playerID);
+            return null;
+        });
+    }
+
+    public void setServerName(String name) throws StorageException {
+        write(s -> {
+            s.setServerName(name);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the function against every open storage engine in parallel.
+     * @return the result from the first engine, in storage order, which succeeded
+     * @throws StorageException if every engine failed, or there were no engines
+     */
+    public <T> T write(StorageFunction<T> function) throws StorageException {
+        List<Storage> storage = getStorage();
+
+        List<CompletableFuture<T>> futures = new ArrayList<>(storage.size());
+        for (Storage s : storage) {
+            futures.add(submit(s, function));
+        }
+
+        StorageException lastEx = null;
+        for (CompletableFuture<T> future : futures) {
+            try {
+                return future.get();
+            } catch (ExecutionException ex) {
+                lastEx = ex.getCause() instanceof StorageException ? (StorageException) ex.getCause() : new StorageException(false, ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new StorageException(true, ex);
+            }
+        }
+
+        if (lastEx == null) {
+            throw new StorageException(false, "No storage engines are available.");
+        }
+        throw lastEx;
+    }
+
+    /**
+     * @return the number of writes queued or running against the engine
+     */
+    public long getLag(Storage storage) {
+        EngineState state = states.get(storage);
+        return state != null ? state.pending.get() : 0L;
+    }
+
+    /**
+     * @return the number of writes that have failed against the engine
+     */
+    public long getFailures(Storage storage) {
+        EngineState state = states.get(storage);
+        return state != null ? state.failed.get() : 0L;
+    }
+
+    /**
+     * @return the number of writes dropped because the engine's queue was full
+     */
+    public long getDropped(Storage storage) {
+        EngineState state = states.get(storage);
+        return state != null ? state.dropped.get() : 0L;
+    }
+
+    public void close() {
+        synchronized (states) {
+            for (EngineState state : states.values()) {
+                state.executor.shutdown();
+            }
+            for (EngineState state : states.values()) {
+                try {
+                    if (!state.executor.awaitTermination(5L, TimeUnit.SECONDS)) {
+                        logger.warn("Storage engine " + state.name + " still had " + state.pending.get() + " pending writes on close.");
+                        state.executor.shutdownNow();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    state.executor.shutdownNow();
+                }
+            }
+            states.clear();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Storage storage, StorageFunction<T> function) {
+        EngineState state;
+        synchronized (states) {
+            state = states.computeIfAbsent(storage, k -> new EngineState(k.getClass().getSimpleName() + "-" + states.size(), threadsPerEngine, queuePerEngine));
+        }
+
+        CompletableFuture<T> retVal = new CompletableFuture<>();
+        state.pending.incrementAndGet();
+        try {
+            state.executor.execute(() -> {
+                try {
+                    retVal.complete(function.apply(storage));
+                } catch (StorageException | RuntimeException ex) {
+                    state.failed.incrementAndGet();
+                    logger.error("Write to storage engine " + state.name + " failed: " + ex.getMessage(), ex);
+                    retVal.completeExceptionally(ex);
+                } finally {
+                    state.pending.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            state.pending.decrementAndGet();
+            if (state.executor.isShutdown()) {
+                retVal.completeExceptionally(new StorageException(false, "Storage writer is closed.", ex));
+            } else {
+                // A stalled engine shouldn't pile up writes until we run out of memory
+                if (state.dropped.getAndIncrement() % 1000L == 0L) {
+                    logger.warn("Storage engine " + state.name + " is backed up, dropped " + state.dropped.get() + " writes so far.");
+                }
+                retVal.completeExceptionally(new StorageException(true, "Storage engine " + state.name + " is backed up."));
+            }
+        }
+        return retVal;
+    }
+
+    private List<Storage> getStorage() throws StorageException {
+        Optional<CachedConfigValues> cachedConfig = ConfigUtil.getCachedConfig();
+        if (!cachedConfig.isPresent()) {
+            throw new StorageException(false, "Could not get cached config.");
+        }
+
+        List<Storage> retVal = new ArrayList<>();
+        for (Storage s : cachedConfig.get().getStorage()) {
+            if (!s.isClosed()) {
+                retVal.add(s);
+            }
+        }
+        return retVal;
+    }
+
+    private static class EngineState {
+        private final String name;
+        private final ExecutorService executor;
+        private final AtomicLong pending = new AtomicLong(0L);
+        private final AtomicLong failed = new AtomicLong(0L);
+        private final AtomicLong dropped = new AtomicLong(0L);
+
+        private EngineState(String name, int threads, int queueSize) {
+            this.name = name;
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), new ThreadFactoryBuilder().setNameFormat("AltFinder-Storage-" + name + "-%d").setDaemon(true).build());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package me.egg82.altfinder.storage;
 import com.google.common.primitives.Ints;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
@@ -47,9 +48,15 @@ public abstract class AbstractSQL implements Storage {
                     // Insert DB version
                     storage.setKey("db_version", "1.0");
                 }
-                /*if (oldVersion < 1.1d) {
-                    toVersion(storage, sqlResourceName, "1.1", importer);
-                }*/
+                if (oldVersion < 1.1d) {
+                    toVersion(storage, sqlResourceName, "1.1", new FileImporter(storage.sql));
+                }
+                if (oldVersion < 1.2d) {
+                    toVersion(storage, sqlResourceName, "1.2", new FileImporter(storage.sql));
+                }
+                if (oldVersion < 1.3d) {
+                    toVersion(storage, sqlResourceName, "1.3", new FileImporter(storage.sql));
+                }
             } catch (SQLException ex) {
                 throw new StorageException(false, "Could not get/update SQL version.", ex);
             }
@@ -58,6 +65,11 @@ public abstract class AbstractSQL implements Storage {
         private static void toVersion(AbstractSQL storage, String sqlResourceName, String version, FileImporter importer) throws IOException, SQLException {
             // Update DB
             InputStream stream = SQLVersionUtil.class.getClassLoader().getResourceAsStream(sqlResourceName + "_" + version + ".sql");
+            if (stream == null) {
+                // Nothing changed for this engine in this version
+                storage.setKey("db_version", version);
+                return;
+            }
             StringBuilder builder = new StringBuilder();
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8.name()))) {
                 String line;
@@ -170,6 +182,12 @@ public abstract class AbstractSQL implements Storage {
         }
     }
 
+    /**
+     * Borrows a raw pooled connection for work the SQL wrapper can't express, eg. JDBC batches and transactions.
+     * The caller is responsible for closing it.
+     */
+    protected Connection getConnection() throws SQLException { return sql.getConnection(); }
+
     protected abstract void setKey(String key, String value) throws SQLException;
 
     protected abstract double getDouble(String key) throws SQLException;
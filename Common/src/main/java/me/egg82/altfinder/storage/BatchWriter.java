@@ -0,0 +1,162 @@
+package me.egg82.altfinder.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects single writes from many threads and flushes them together.
+ * A batch is flushed once it reaches maxSize or once its oldest entry has waited maxDelay.
+ * Callers of submit() block until the batch containing their entry has been flushed.
+ */
+class BatchWriter<T, R> {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    interface Flusher<T, R> {
+        /**
+         * @return results aligned, by index, with the given batch
+         */
+        List<R> flush(List<T> batch) throws StorageException;
+    }
+
+    private final int maxSize;
+    private final long maxDelayNanos;
+    private final Flusher<T, R> flusher;
+
+    private final BlockingQueue<Pending<T, R>> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService worker;
+
+    private volatile boolean closed = false;
+
+    BatchWriter(String name, int maxSize, long maxDelay, TimeUnit unit, Flusher<T, R> flusher) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize cannot be <= 0.");
+        }
+        if (maxDelay < 0L) {
+            throw new IllegalArgumentException("maxDelay cannot be < 0.");
+        }
+
+        this.maxSize = maxSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.flusher = flusher;
+
+        worker = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("AltFinder-" + name + "-%d").setDaemon(true).build());
+        worker.submit(this::run);
+    }
+
+    R submit(T item) throws StorageException {
+        if (closed) {
+            throw new StorageException(false, "Batch writer is closed.");
+        }
+
+        Pending<T, R> pending = new Pending<>(item);
+        queue.add(pending);
+        // Closed while enqueueing. If the worker didn't take it, nothing will
+        if (closed && queue.remove(pending)) {
+            throw new StorageException(false, "Batch writer is closed.");
+        }
+
+        try {
+            return pending.future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof StorageException) {
+                throw (StorageException) ex.getCause();
+            }
+            throw new StorageException(false, ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(true, ex);
+        }
+    }
+
+    void close() {
+        // The worker keeps flushing until the queue is empty, then exits
+        closed = true;
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(5L, TimeUnit.SECONDS)) {
+                logger.warn("Batch writer did not finish flushing in time.");
+                worker.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            worker.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        // Anything still waiting will never be flushed
+        Pending<T, R> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new StorageException(false, "Batch writer is closed."));
+        }
+    }
+
+    private void run() {
+        List<Pending<T, R>> batch = new ArrayList<>(maxSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending<T, R> first = queue.poll(250L, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        queue.drainTo(batch, maxSize - batch.size());
+                        break;
+                    }
+                    Pending<T, R> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException ignored) {
+                // Took too long to drain, close() fails everything left in the queue
+                for (Pending<T, R> pending : batch) {
+                    pending.future.completeExceptionally(new StorageException(false, "Batch writer is closed."));
+                }
+                return;
+            }
+
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<Pending<T, R>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<T> items = new ArrayList<>(batch.size());
+        for (Pending<T, R> pending : batch) {
+            items.add(pending.item);
+        }
+
+        List<R> results;
+        try {
+            results = flusher.flush(items);
+        } catch (StorageException | RuntimeException ex) {
+            for (Pending<T, R> pending : batch) {
+                pending.future.completeExceptionally(ex);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete(i < results.size() ? results.get(i) : null);
+        }
+    }
+
+    private static class Pending<T, R> {
+        private final T item;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        private Pending(T item) { this.item = item; }
+    }
+}
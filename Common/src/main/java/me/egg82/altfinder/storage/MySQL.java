@@ -1,14 +1,17 @@
 package me.egg82.altfinder.storage;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.mysql.cj.exceptions.MysqlErrorNumbers;
 import com.zaxxer.hikari.HikariConfig;
 import java.io.IOException;
 import java.io.StringReader;
-import java.sql.SQLException;
-import java.sql.Timestamp;
+import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import me.egg82.altfinder.core.*;
 import me.egg82.altfinder.services.StorageHandler;
 import me.egg82.altfinder.utils.ValidationUtil;
@@ -21,22 +24,39 @@ import org.slf4j.LoggerFactory;
 public class MySQL extends AbstractSQL {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final LoadingCache<String, Long> longIPIDCache = Caffeine.newBuilder().build(this::getLongIPIDExpensive);
-    private final LoadingCache<UUID, Long> longPlayerIDCache = Caffeine.newBuilder().build(this::getLongPlayerIDExpensive);
+    // Keyed by the IP exactly as it's written, the same as the unique ip column it caches
+    private Cache<String, Long> longIPIDCache;
+    private LoadingCache<UUID, Long> longPlayerIDCache;
+    // Lookups which found no ID, so repeated lookups of unknown IPs/players don't hit the database
+    private Cache<String, Boolean> missingIPCache;
+    private Cache<UUID, Boolean> missingPlayerCache;
+
+    private long maxIPIDs = 250000L;
+    private long maxPlayerIDs = 250000L;
+    private long idExpireAfterAccess = TimeUnit.HOURS.toMillis(2L);
+    private long missingExpireAfterWrite = TimeUnit.MINUTES.toMillis(1L);
 
     private String serverName;
     private String serverID;
     private UUID uuidServerID;
     private long longServerID;
-    private volatile long lastAltID;
     private StorageHandler handler;
 
+    private int loadBatchSize = 1000;
+
+    private int postBatchSize = 100;
+    private long postBatchDelay = 5L;
+    private BatchWriter<PostRequest, PostAltResult> postWriter = null;
+
     private MySQL() { }
 
     private volatile boolean closed = false;
 
     public void close() {
         closed = true;
+        if (postWriter != null) {
+            postWriter.close();
+        }
         sql.close();
     }
 
@@ -124,11 +144,55 @@ public class MySQL extends AbstractSQL {
             return this;
         }
 
+        /**
+         * Group-commits posts. Pending posts are flushed as one batch once maxRows are waiting
+         * or the oldest has waited maxDelayMillis. A maxRows of 1 or less disables batching.
+         */
+        public MySQL.Builder postBatch(int maxRows, long maxDelayMillis) {
+            if (maxDelayMillis < 0L) {
+                throw new IllegalArgumentException("maxDelayMillis cannot be < 0.");
+            }
+            result.postBatchSize = maxRows;
+            result.postBatchDelay = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * Bounds the IP and player ID caches. Entries not used within expireAfterAccess are dropped.
+         */
+        public MySQL.Builder idCache(long maxIPs, long maxPlayers, long expireAfterAccess, TimeUnit unit) {
+            if (maxIPs <= 0L) {
+                throw new IllegalArgumentException("maxIPs cannot be <= 0.");
+            }
+            if (maxPlayers <= 0L) {
+                throw new IllegalArgumentException("maxPlayers cannot be <= 0.");
+            }
+            result.maxIPIDs = maxIPs;
+            result.maxPlayerIDs = maxPlayers;
+            result.idExpireAfterAccess = unit.toMillis(expireAfterAccess);
+            return this;
+        }
+
+        public MySQL.Builder loadBatchSize(int size) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("size cannot be <= 0.");
+            }
+            result.loadBatchSize = size;
+            return this;
+        }
+
         public MySQL build() throws IOException, StorageException {
+            result.longIPIDCache = Caffeine.newBuilder().maximumSize(result.maxIPIDs).expireAfterAccess(result.idExpireAfterAccess, TimeUnit.MILLISECONDS).recordStats().build();
+            result.longPlayerIDCache = Caffeine.newBuilder().maximumSize(result.maxPlayerIDs).expireAfterAccess(result.idExpireAfterAccess, TimeUnit.MILLISECONDS).recordStats().build(result::getLongPlayerIDExpensive);
+            result.missingIPCache = Caffeine.newBuilder().maximumSize(result.maxIPIDs / 10L + 1L).expireAfterWrite(result.missingExpireAfterWrite, TimeUnit.MILLISECONDS).build();
+            result.missingPlayerCache = Caffeine.newBuilder().maximumSize(result.maxPlayerIDs / 10L + 1L).expireAfterWrite(result.missingExpireAfterWrite, TimeUnit.MILLISECONDS).build();
+
             result.sql = new SQL(config);
             SQLVersionUtil.conformVersion(result, "mysql");
             result.longServerID = getLongServerID();
-            result.lastAltID = getLastAltID();
+            if (result.postBatchSize > 1) {
+                result.postWriter = new BatchWriter<>("MySQL-Post", result.postBatchSize, result.postBatchDelay, TimeUnit.MILLISECONDS, result::flushPosts);
+            }
             return result;
         }
 
@@ -144,37 +208,54 @@ public class MySQL extends AbstractSQL {
             }
             return ((Number) r.getData()[0][0]).longValue();
         }
-
-        private long getLastAltID() throws StorageException {
-            SQLQueryResult r;
-            try {
-                r = result.sql.query("SELECT MAX(`id`) FROM `" + result.prefix + "alts`;");
-            } catch (SQLException ex) {
-                throw new StorageException(false, ex);
-            }
-            if (r.getData().length != 1) {
-                throw new StorageException(false, "Could not get alt IDs.");
-            }
-            return r.getData()[0][0] != null ? ((Number) r.getData()[0][0]).longValue() : 0;
-        }
     }
 
-    public Set<AltResult> getQueue() throws StorageException {
-        Set<AltResult> retVal = new LinkedHashSet<>();
+    public QueuePage<QueueResult> getQueue(long afterUpdated, long afterID, int size) throws StorageException {
+        Set<QueueResult> retVal = new LinkedHashSet<>();
         SQLQueryResult result;
         try {
-            result = sql.call("call `" + prefix + "get_queue_id`(?);", lastAltID);
+            result = sql.call("call `" + prefix + "get_queue_updated`(?, ?, ?);", new Timestamp(afterUpdated), afterID, size);
         } catch (SQLException ex) {
             throw new StorageException(isAutomaticallyRecoverable(ex), ex);
         }
+
+        long lastUpdated = afterUpdated;
+        long lastID = afterID;
         for (Object[] row : result.getData()) {
+            lastUpdated = ((Timestamp) row[7]).getTime();
+            lastID = ((Number) row[0]).longValue();
             AltResult r = getResult(row);
             if (r != null) {
-                lastAltID = r.getID();
-                retVal.add(r);
+                retVal.add(new QueueResult(r.getID(), r.getIP(), r.getPlayerID(), r.getServerID(), r.getServerName(), r.getCount(), r.getCreated(), r.getUpdated(), ((Number) row[8]).longValue(), ((Number) row[9]).longValue(), ((Number) row[10]).longValue()));
             }
         }
-        return retVal;
+        return new QueuePage<>(retVal, lastUpdated, lastID, result.getData().length);
+    }
+
+    public long getLastAltID() throws StorageException {
+        SQLQueryResult r;
+        try {
+            r = sql.query("SELECT MAX(`id`) FROM `" + prefix + "alts`;");
+        } catch (SQLException ex) {
+            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+        }
+        if (r.getData().length != 1) {
+            throw new StorageException(false, "Could not get alt IDs.");
+        }
+        return r.getData()[0][0] != null ? ((Number) r.getData()[0][0]).longValue() : 0L;
+    }
+
+    public long getLastUpdated() throws StorageException {
+        SQLQueryResult r;
+        try {
+            r = sql.query("SELECT MAX(`updated`) FROM `" + prefix + "alts`;");
+        } catch (SQLException ex) {
+            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+        }
+        if (r.getData().length != 1) {
+            throw new StorageException(false, "Could not get alt update times.");
+        }
+        return r.getData()[0][0] != null ? ((Timestamp) r.getData()[0][0]).getTime() : 0L;
     }
 
     public Set<AltResult> getByIP(String ip, int days) throws StorageException {
@@ -185,7 +266,10 @@ public class MySQL extends AbstractSQL {
             throw new IllegalArgumentException("ip is invalid.");
         }
 
-        long longIPID = longIPIDCache.get(ip);
+        long longIPID = findLongIPID(ip);
+        if (longIPID < 0L) {
+            return new LinkedHashSet<>();
+        }
         Set<AltResult> retVal = new LinkedHashSet<>();
         SQLQueryResult result;
         try {
@@ -205,7 +289,10 @@ public class MySQL extends AbstractSQL {
             throw new IllegalArgumentException("playerID cannot be null.");
         }
 
-        long longPlayerID = longPlayerIDCache.get(playerID);
+        long longPlayerID = findLongPlayerID(playerID);
+        if (longPlayerID < 0L) {
+            return new LinkedHashSet<>();
+        }
         Set<AltResult> retVal = new LinkedHashSet<>();
         SQLQueryResult result;
         try {
@@ -220,7 +307,145 @@ public class MySQL extends AbstractSQL {
         return retVal;
     }
 
-    public PostAltResult post(UUID playerID, String ip) throws StorageException {
+    public Set<AltResult> getByIPs(Collection<String> ips, int days) throws StorageException {
+        if (ips == null) {
+            throw new IllegalArgumentException("ips cannot be null.");
+        }
+
+        Set<String> values = new LinkedHashSet<>();
+        for (String ip : ips) {
+            if (ip == null) {
+                throw new IllegalArgumentException("ips cannot contain null.");
+            }
+            if (!ValidationUtil.isValidIp(ip)) {
+                throw new IllegalArgumentException("ips contains an invalid IP.");
+            }
+            values.add(ip);
+        }
+        return getByValues("i", "ip", new ArrayList<>(values), days);
+    }
+
+    public Set<AltResult> getByPlayers(Collection<UUID> playerIDs, int days) throws StorageException {
+        if (playerIDs == null) {
+            throw new IllegalArgumentException("playerIDs cannot be null.");
+        }
+
+        Set<String> values = new LinkedHashSet<>();
+        for (UUID playerID : playerIDs) {
+            if (playerID == null) {
+                throw new IllegalArgumentException("playerIDs cannot contain null.");
+            }
+            values.add(playerID.toString());
+        }
+        return getByValues("p", "uuid", new ArrayList<>(values), days);
+    }
+
+    public Map<UUID, Integer> getLinkedPlayers(UUID playerID, int maxDepth, int maxPlayers) throws StorageException {
+        if (playerID == null) {
+            throw new IllegalArgumentException("playerID cannot be null.");
+        }
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth cannot be < 0.");
+        }
+        if (maxPlayers <= 0) {
+            throw new IllegalArgumentException("maxPlayers cannot be <= 0.");
+        }
+
+        long longPlayerID = findLongPlayerID(playerID);
+        if (longPlayerID < 0L) {
+            return new LinkedHashMap<>();
+        }
+
+        // Breadth-first, one query per hop for the whole frontier. Only players found in the last hop are
+        // expanded and players already found are dropped, so nobody is walked twice.
+        // A recursive CTE can't do that in MySQL (the recursive part can only reference itself once) and
+        // needs MySQL 8/MariaDB 10.2.2 besides.
+        Map<Long, Integer> depths = new LinkedHashMap<>();
+        depths.put(longPlayerID, 0);
+        List<Long> frontier = Collections.singletonList(longPlayerID);
+        for (int depth = 1; depth <= maxDepth && !frontier.isEmpty() && depths.size() < maxPlayers; depth++) {
+            List<Long> next = new ArrayList<>();
+            for (long linked : getLinkedIDs(frontier)) {
+                if (depths.size() >= maxPlayers) {
+                    break;
+                }
+                if (depths.putIfAbsent(linked, depth) == null) {
+                    next.add(linked);
+                }
+            }
+            frontier = next;
+        }
+
+        Map<Long, String> uuids = getPlayerUUIDs(new ArrayList<>(depths.keySet()));
+        Map<UUID, Integer> retVal = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> kvp : depths.entrySet()) {
+            String uuid = uuids.get(kvp.getKey());
+            if (uuid == null) {
+                continue;
+            }
+            if (!ValidationUtil.isValidUuid(uuid)) {
+                logger.warn("Player ID linked to " + playerID + " has an invalid UUID \"" + uuid + "\".");
+                continue;
+            }
+            retVal.put(UUID.fromString(uuid), kvp.getValue());
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the IDs of every player sharing an IP with any of the players, in ID order
+     */
+    private SortedSet<Long> getLinkedIDs(List<Long> longPlayerIDs) throws StorageException {
+        SortedSet<Long> retVal = new TreeSet<>();
+        for (int i = 0; i < longPlayerIDs.size(); i += loadBatchSize) {
+            List<Long> chunk = longPlayerIDs.subList(i, Math.min(i + loadBatchSize, longPlayerIDs.size()));
+
+            StringBuilder query = new StringBuilder("SELECT DISTINCT `b`.`player_id` FROM `" + prefix + "alts` `a` "
+                    + "JOIN `" + prefix + "alts` `b` ON `b`.`ip_id`=`a`.`ip_id` "
+                    + "WHERE `a`.`player_id` IN (");
+            for (int j = 0; j < chunk.size(); j++) {
+                query.append(j == 0 ? "?" : ", ?");
+            }
+            query.append(");");
+
+            SQLQueryResult result;
+            try {
+                result = sql.query(query.toString(), chunk.toArray());
+            } catch (SQLException ex) {
+                throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+            }
+            for (Object[] row : result.getData()) {
+                retVal.add(((Number) row[0]).longValue());
+            }
+        }
+        return retVal;
+    }
+
+    private Map<Long, String> getPlayerUUIDs(List<Long> longPlayerIDs) throws StorageException {
+        Map<Long, String> retVal = new HashMap<>();
+        for (int i = 0; i < longPlayerIDs.size(); i += loadBatchSize) {
+            List<Long> chunk = longPlayerIDs.subList(i, Math.min(i + loadBatchSize, longPlayerIDs.size()));
+
+            StringBuilder query = new StringBuilder("SELECT `id`, `uuid` FROM `" + prefix + "players` WHERE `id` IN (");
+            for (int j = 0; j < chunk.size(); j++) {
+                query.append(j == 0 ? "?" : ", ?");
+            }
+            query.append(");");
+
+            SQLQueryResult result;
+            try {
+                result = sql.query(query.toString(), chunk.toArray());
+            } catch (SQLException ex) {
+                throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+            }
+            for (Object[] row : result.getData()) {
+                retVal.put(((Number) row[0]).longValue(), (String) row[1]);
+            }
+        }
+        return retVal;
+    }
+
+    public PostAltResult post(UUID playerID, String ip, long time) throws StorageException {
         if (playerID == null) {
             throw new IllegalArgumentException("playerID cannot be null.");
         }
@@ -231,17 +456,18 @@ public class MySQL extends AbstractSQL {
             throw new IllegalArgumentException("ip is invalid.");
         }
 
-        long longIPID = longIPIDCache.get(ip);
-        long longPlayerID = longPlayerIDCache.get(playerID);
-        try {
-            sql.execute("INSERT INTO `" + prefix + "alts` (`ip_id`, `player_id`, `server_id`) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE `server_id`=?, `count`=`count` + 1, `updated`=CURRENT_TIMESTAMP();", longIPID, longPlayerID, longServerID, longServerID);
-        } catch (SQLException ex) {
-            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+        if (postWriter != null) {
+            // IDs are resolved for the whole batch at once
+            return postWriter.submit(new PostRequest(ip, playerID, time));
         }
 
+        long longIPID = resolveIPIDs(Collections.singleton(ip)).get(ip);
+        long longPlayerID = resolvePlayerIDs(Collections.singleton(playerID)).get(playerID);
+
+        // Upsert and read back in a single round trip
         SQLQueryResult query;
         try {
-            query = sql.query("SELECT `id`, `count`, `created`, `updated` FROM `" + prefix + "alts` WHERE `ip_id`=? AND `player_id`=?;", longIPID, longPlayerID);
+            query = sql.call("call `" + prefix + "post_alt`(?, ?, ?, ?);", longIPID, longPlayerID, longServerID, new Timestamp(time));
         } catch (SQLException ex) {
             throw new StorageException(isAutomaticallyRecoverable(ex), ex);
         }
@@ -264,6 +490,128 @@ public class MySQL extends AbstractSQL {
         );
     }
 
+    public void delete(String ip) throws StorageException {
+        if (ip == null) {
+            throw new IllegalArgumentException("ip cannot be null.");
+        }
+
+        long longIPID = findLongIPID(ip);
+        if (longIPID < 0L) {
+            return;
+        }
+        try {
+            sql.execute("DELETE FROM `" + prefix + "alts` WHERE `ip_id`=?;", longIPID);
+        } catch (SQLException ex) {
+            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+        }
+    }
+
+    public void delete(UUID playerID) throws StorageException {
+        if (playerID == null) {
+            throw new IllegalArgumentException("playerID cannot be null.");
+        }
+
+        long longPlayerID = findLongPlayerID(playerID);
+        if (longPlayerID < 0L) {
+            return;
+        }
+        try {
+            sql.execute("DELETE FROM `" + prefix + "alts` WHERE `player_id`=?;", longPlayerID);
+        } catch (SQLException ex) {
+            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+        }
+    }
+
+    private List<PostAltResult> flushPosts(List<PostRequest> posts) throws StorageException {
+        Set<String> ips = new HashSet<>();
+        Set<UUID> playerIDs = new HashSet<>();
+        for (PostRequest post : posts) {
+            ips.add(post.ip);
+            playerIDs.add(post.playerID);
+        }
+        Map<String, Long> longIPIDs = resolveIPIDs(ips);
+        Map<UUID, Long> longPlayerIDs = resolvePlayerIDs(playerIDs);
+
+        List<AltKey> keys = new ArrayList<>(posts.size());
+        for (PostRequest post : posts) {
+            keys.add(new AltKey(longIPIDs.get(post.ip), longPlayerIDs.get(post.playerID)));
+        }
+
+        Map<AltKey, Object[]> rows = new HashMap<>();
+
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                // rewriteBatchedStatements turns this into a single multi-row upsert
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO `" + prefix + "alts` (`ip_id`, `player_id`, `server_id`, `created`) VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE `server_id`=?, `count`=`count` + 1, `updated`=CURRENT_TIMESTAMP();")) {
+                    for (int i = 0; i < posts.size(); i++) {
+                        AltKey key = keys.get(i);
+                        statement.setLong(1, key.longIPID);
+                        statement.setLong(2, key.longPlayerID);
+                        statement.setLong(3, longServerID);
+                        statement.setTimestamp(4, new Timestamp(posts.get(i).time));
+                        statement.setLong(5, longServerID);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+
+                Set<AltKey> unique = new LinkedHashSet<>(keys);
+                StringBuilder query = new StringBuilder("SELECT `ip_id`, `player_id`, `id`, `count`, `created`, `updated` FROM `" + prefix + "alts` WHERE (`ip_id`, `player_id`) IN (");
+                for (int i = 0; i < unique.size(); i++) {
+                    query.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+                }
+                query.append(");");
+
+                try (PreparedStatement statement = connection.prepareStatement(query.toString())) {
+                    int i = 1;
+                    for (AltKey key : unique) {
+                        statement.setLong(i++, key.longIPID);
+                        statement.setLong(i++, key.longPlayerID);
+                    }
+                    try (ResultSet set = statement.executeQuery()) {
+                        while (set.next()) {
+                            rows.put(new AltKey(set.getLong(1), set.getLong(2)), new Object[] { set.getLong(3), set.getLong(4), set.getTimestamp(5), set.getTimestamp(6) });
+                        }
+                    }
+                }
+
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+        }
+
+        List<PostAltResult> retVal = new ArrayList<>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            PostRequest post = posts.get(i);
+            AltKey key = keys.get(i);
+            Object[] row = rows.get(key);
+            if (row == null) {
+                throw new StorageException(false, "Could not get data from inserted value.");
+            }
+            retVal.add(new PostAltResult(
+                    (Long) row[0],
+                    key.longIPID,
+                    post.ip,
+                    key.longPlayerID,
+                    post.playerID,
+                    longServerID,
+                    uuidServerID,
+                    serverName,
+                    (Long) row[1],
+                    ((Timestamp) row[2]).getTime(),
+                    ((Timestamp) row[3]).getTime()
+            ));
+        }
+        return retVal;
+    }
+
     public void setServerRaw(long longServerID, UUID serverID, String name) throws StorageException {
         try {
             sql.execute("INSERT INTO `" + prefix + "servers` (`id`, `uuid`, `name`) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE `id`=?, `uuid`=?, `name`=?;", longServerID, serverID.toString(), name, longServerID, serverID.toString(), name);
@@ -274,11 +622,12 @@ public class MySQL extends AbstractSQL {
 
     public void setIPRaw(long longIPID, String ip) throws StorageException {
         try {
-            sql.execute("INSERT INTO `" + prefix + "ips` (`id`, `ip`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `ip`=?, `uuid`=?;", longIPID, ip, longIPID, ip);
+            sql.execute("INSERT INTO `" + prefix + "ips` (`id`, `ip`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `ip`=VALUES(`ip`);", longIPID, ip);
         } catch (SQLException ex) {
             throw new StorageException(isAutomaticallyRecoverable(ex), ex);
         }
         longIPIDCache.put(ip, longIPID);
+        missingIPCache.invalidate(ip);
     }
 
     public void setPlayerRaw(long longPlayerID, UUID playerID) throws StorageException {
@@ -288,6 +637,7 @@ public class MySQL extends AbstractSQL {
             throw new StorageException(isAutomaticallyRecoverable(ex), ex);
         }
         longPlayerIDCache.put(playerID, longPlayerID);
+        missingPlayerCache.invalidate(playerID);
     }
 
     public void postRaw(long id, long longIPID, long longPlayerID, long longServerID, long count, long created, long updated) throws StorageException {
@@ -320,10 +670,122 @@ public class MySQL extends AbstractSQL {
         return -1.0d;
     }
 
-    public long getLongIPID(String ip) { return longIPIDCache.get(ip); }
+    public long getLongIPID(String ip) { return getLongIPIDCached(ip); }
+
+    private long getLongIPIDCached(String ip) {
+        return longIPIDCache.get(ip, k -> {
+            try {
+                return getLongIPIDExpensive(ip);
+            } catch (SQLException | StorageException ex) {
+                // Same as a LoadingCache loader failing
+                throw new CompletionException(ex);
+            }
+        });
+    }
 
     public long getLongPlayerID(UUID playerID) { return longPlayerIDCache.get(playerID); }
 
+    public Map<String, Long> resolveIPIDs(Collection<String> ips) throws StorageException {
+        if (ips == null) {
+            throw new IllegalArgumentException("ips cannot be null.");
+        }
+
+        Map<String, Long> retVal = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String ip : ips) {
+            if (ip == null) {
+                throw new IllegalArgumentException("ips cannot contain null.");
+            }
+            if (!ValidationUtil.isValidIp(ip)) {
+                throw new IllegalArgumentException("ips contains an invalid IP \"" + ip + "\".");
+            }
+            Long id = longIPIDCache.getIfPresent(ip);
+            if (id != null) {
+                retVal.put(ip, id);
+            } else {
+                missing.add(ip);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Set<String> created = new HashSet<>();
+            Map<String, Long> resolved;
+            try {
+                resolved = resolveIDs("ips", "ip", missing, created);
+            } catch (SQLException ex) {
+                throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+            }
+
+            longIPIDCache.putAll(resolved);
+            missingIPCache.invalidateAll(resolved.keySet());
+            retVal.putAll(resolved);
+
+            for (String ip : created) {
+                handler.ipIDCreationCallback(ip, resolved.get(ip), this);
+            }
+        }
+
+        for (String ip : ips) {
+            if (!retVal.containsKey(ip)) {
+                throw new StorageException(false, "Could not get ID for IP " + ip + ".");
+            }
+        }
+        return retVal;
+    }
+
+    public Map<UUID, Long> resolvePlayerIDs(Collection<UUID> playerIDs) throws StorageException {
+        if (playerIDs == null) {
+            throw new IllegalArgumentException("playerIDs cannot be null.");
+        }
+
+        Map<UUID, Long> retVal = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (UUID playerID : playerIDs) {
+            if (playerID == null) {
+                throw new IllegalArgumentException("playerIDs cannot contain null.");
+            }
+            Long id = longPlayerIDCache.getIfPresent(playerID);
+            if (id != null) {
+                retVal.put(playerID, id);
+            } else {
+                missing.add(playerID.toString());
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Set<String> created = new HashSet<>();
+            Map<String, Long> resolved;
+            try {
+                resolved = resolveIDs("players", "uuid", missing, created);
+            } catch (SQLException ex) {
+                throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+            }
+
+            Map<UUID, Long> newIDs = new HashMap<>();
+            for (Map.Entry<String, Long> kvp : resolved.entrySet()) {
+                newIDs.put(UUID.fromString(kvp.getKey()), kvp.getValue());
+            }
+            longPlayerIDCache.putAll(newIDs);
+            missingPlayerCache.invalidateAll(newIDs.keySet());
+            retVal.putAll(newIDs);
+
+            for (String uuid : created) {
+                handler.playerIDCreationCallback(UUID.fromString(uuid), resolved.get(uuid), this);
+            }
+        }
+
+        for (UUID playerID : playerIDs) {
+            if (!retVal.containsKey(playerID)) {
+                throw new StorageException(false, "Could not get ID for player " + playerID + ".");
+            }
+        }
+        return retVal;
+    }
+
+    public CacheStats getIPIDCacheStats() { return longIPIDCache.stats(); }
+
+    public CacheStats getPlayerIDCacheStats() { return longPlayerIDCache.stats(); }
+
     public Set<ServerResult> dumpServers() throws StorageException {
         Set<ServerResult> retVal = new LinkedHashSet<>();
 
@@ -352,30 +814,26 @@ public class MySQL extends AbstractSQL {
     }
 
     public void loadServers(Set<ServerResult> servers) throws StorageException {
-        // TODO: Batch execute
-        try {
-            sql.execute("SET FOREIGN_KEY_CHECKS = 0;");
-            sql.execute("TRUNCATE `" + prefix + "servers`;");
-            for (ServerResult server : servers) {
-                sql.execute("INSERT INTO `" + prefix + "servers` (`id`, `uuid`, `name`) VALUES (?, ?, ?);", server.getLongServerID(), server.getServerID().toString(), server.getName());
-            }
-            sql.execute("SET FOREIGN_KEY_CHECKS = 1;");
-        } catch (SQLException ex) {
-            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
-        }
+        batchLoad("servers", "INSERT INTO `" + prefix + "servers` (`id`, `uuid`, `name`) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE `uuid`=VALUES(`uuid`), `name`=VALUES(`name`);", servers, true, (statement, server) -> {
+            statement.setLong(1, server.getLongServerID());
+            statement.setString(2, server.getServerID().toString());
+            statement.setString(3, server.getName());
+        });
     }
 
-    public Set<IPResult> dumpIPs(long begin, int size) throws StorageException {
+    public DumpPage<IPResult> dumpIPs(long afterID, int size) throws StorageException {
         Set<IPResult> retVal = new LinkedHashSet<>();
 
         SQLQueryResult result;
         try {
-            result = sql.query("SELECT `id`, `ip` FROM `" + prefix + "ips` LIMIT ?, ?;", begin - 1, size);
+            result = sql.query("SELECT `id`, `ip` FROM `" + prefix + "ips` WHERE `id` > ? ORDER BY `id` LIMIT ?;", afterID, size);
         } catch (SQLException ex) {
             throw new StorageException(isAutomaticallyRecoverable(ex), ex);
         }
 
+        long lastID = afterID;
         for (Object[] row : result.getData()) {
+            lastID = ((Number) row[0]).longValue();
             String ip = (String) row[1];
             if (!ValidationUtil.isValidIp(ip)) {
                 logger.warn("IP ID " + ((Number) row[0]).longValue() + " has an invalid IP \"" + ip + "\".");
@@ -383,45 +841,51 @@ public class MySQL extends AbstractSQL {
             }
 
             retVal.add(new IPResult(
-                    ((Number) row[0]).byteValue(),
+                    ((Number) row[0]).longValue(),
                     (String) row[1]
             ));
         }
 
-        return retVal;
+        return new DumpPage<>(retVal, lastID, result.getData().length);
     }
 
     public void loadIPs(Set<IPResult> ips, boolean truncate) throws StorageException {
-        // TODO: Batch execute
-        try {
-            if (truncate) {
-                sql.execute("SET FOREIGN_KEY_CHECKS = 0;");
-                sql.execute("TRUNCATE `" + prefix + "ips`;");
-                longIPIDCache.invalidateAll();
-            }
+        if (truncate) {
+            longIPIDCache.invalidateAll();
+        } else {
+            Map<Long, String> rows = new HashMap<>();
             for (IPResult ip : ips) {
-                sql.execute("INSERT INTO `" + prefix + "ips` (`id`, `ip`) VALUES (?, ?);", ip.getLongIPID(), ip.getIP());
-                longIPIDCache.put(ip.getIP(), ip.getLongIPID());
-            }
-            if (truncate) {
-                sql.execute("SET FOREIGN_KEY_CHECKS = 1;");
+                rows.put(ip.getLongIPID(), ip.getIP());
             }
-        } catch (SQLException ex) {
-            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+            checkConflicts("ips", "ip", rows);
         }
+        // No conflicts, so a duplicate is a row already loaded exactly as it is
+        batchLoad("ips", "INSERT INTO `" + prefix + "ips` (`id`, `ip`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `id`=`id`;", ips, truncate, (statement, ip) -> {
+            statement.setLong(1, ip.getLongIPID());
+            statement.setString(2, ip.getIP());
+        });
+
+        Map<String, Long> ids = new HashMap<>();
+        for (IPResult ip : ips) {
+            ids.put(ip.getIP(), ip.getLongIPID());
+        }
+        longIPIDCache.putAll(ids);
+        missingIPCache.invalidateAll(ids.keySet());
     }
 
-    public Set<PlayerResult> dumpPlayers(long begin, int size) throws StorageException {
+    public DumpPage<PlayerResult> dumpPlayers(long afterID, int size) throws StorageException {
         Set<PlayerResult> retVal = new LinkedHashSet<>();
 
         SQLQueryResult result;
         try {
-            result = sql.query("SELECT `id`, `uuid` FROM `" + prefix + "players` LIMIT ?, ?;", begin - 1, size);
+            result = sql.query("SELECT `id`, `uuid` FROM `" + prefix + "players` WHERE `id` > ? ORDER BY `id` LIMIT ?;", afterID, size);
         } catch (SQLException ex) {
             throw new StorageException(isAutomaticallyRecoverable(ex), ex);
         }
 
+        long lastID = afterID;
         for (Object[] row : result.getData()) {
+            lastID = ((Number) row[0]).longValue();
             String pid = (String) row[1];
             if (!ValidationUtil.isValidUuid(pid)) {
                 logger.warn("Player ID " + ((Number) row[0]).longValue() + " has an invalid UUID \"" + pid + "\".");
@@ -434,40 +898,46 @@ public class MySQL extends AbstractSQL {
             ));
         }
 
-        return retVal;
+        return new DumpPage<>(retVal, lastID, result.getData().length);
     }
 
     public void loadPlayers(Set<PlayerResult> players, boolean truncate) throws StorageException {
-        // TODO: Batch execute
-        try {
-            if (truncate) {
-                sql.execute("SET FOREIGN_KEY_CHECKS = 0;");
-                sql.execute("TRUNCATE `" + prefix + "players`;");
-                longPlayerIDCache.invalidateAll();
-            }
+        if (truncate) {
+            longPlayerIDCache.invalidateAll();
+        } else {
+            Map<Long, String> rows = new HashMap<>();
             for (PlayerResult player : players) {
-                sql.execute("INSERT INTO `" + prefix + "players` (`id`, `uuid`) VALUES (?, ?);", player.getLongPlayerID(), player.getPlayerID().toString());
-                longPlayerIDCache.put(player.getPlayerID(), player.getLongPlayerID());
+                rows.put(player.getLongPlayerID(), player.getPlayerID().toString());
             }
-            if (truncate) {
-                sql.execute("SET FOREIGN_KEY_CHECKS = 1;");
-            }
-        } catch (SQLException ex) {
-            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+            checkConflicts("players", "uuid", rows);
         }
+        // No conflicts, so a duplicate is a row already loaded exactly as it is
+        batchLoad("players", "INSERT INTO `" + prefix + "players` (`id`, `uuid`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `id`=`id`;", players, truncate, (statement, player) -> {
+            statement.setLong(1, player.getLongPlayerID());
+            statement.setString(2, player.getPlayerID().toString());
+        });
+
+        Map<UUID, Long> ids = new HashMap<>();
+        for (PlayerResult player : players) {
+            ids.put(player.getPlayerID(), player.getLongPlayerID());
+        }
+        longPlayerIDCache.putAll(ids);
+        missingPlayerCache.invalidateAll(ids.keySet());
     }
 
-    public Set<RawAltResult> dumpAltValues(long begin, int size) throws StorageException {
+    public DumpPage<RawAltResult> dumpAltValues(long afterID, int size) throws StorageException {
         Set<RawAltResult> retVal = new LinkedHashSet<>();
 
         SQLQueryResult result;
         try {
-            result = sql.query("SELECT `id`, `ip_id`, `player_id`, `server_id`, `count`, `created`, `updated` FROM `" + prefix + "alts` LIMIT ?, ?;", begin - 1, size);
+            result = sql.query("SELECT `id`, `ip_id`, `player_id`, `server_id`, `count`, `created`, `updated` FROM `" + prefix + "alts` WHERE `id` > ? ORDER BY `id` LIMIT ?;", afterID, size);
         } catch (SQLException ex) {
             throw new StorageException(isAutomaticallyRecoverable(ex), ex);
         }
 
+        long lastID = afterID;
         for (Object[] row : result.getData()) {
+            lastID = ((Number) row[0]).longValue();
             retVal.add(new RawAltResult(
                     ((Number) row[0]).longValue(),
                     ((Number) row[1]).longValue(),
@@ -479,21 +949,112 @@ public class MySQL extends AbstractSQL {
             ));
         }
 
-        return retVal;
+        return new DumpPage<>(retVal, lastID, result.getData().length);
     }
 
     public void loadAltValues(Set<RawAltResult> values, boolean truncate) throws StorageException {
-        // TODO: Batch execute
-        try {
-            if (truncate) {
-                sql.execute("SET FOREIGN_KEY_CHECKS = 0;");
-                sql.execute("TRUNCATE `" + prefix + "alts`;");
+        batchLoad("alts", "INSERT INTO `" + prefix + "alts` (`id`, `ip_id`, `player_id`, `server_id`, `count`, `created`, `updated`) VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE `ip_id`=VALUES(`ip_id`), `player_id`=VALUES(`player_id`), `server_id`=VALUES(`server_id`), `count`=VALUES(`count`), `created`=VALUES(`created`), `updated`=VALUES(`updated`);", values, truncate, (statement, value) -> {
+            statement.setLong(1, value.getID());
+            statement.setLong(2, value.getIPID());
+            statement.setLong(3, value.getLongPlayerID());
+            statement.setLong(4, value.getLongServerID());
+            statement.setLong(5, value.getCount());
+            statement.setTimestamp(6, new Timestamp(value.getCreated()));
+            statement.setTimestamp(7, new Timestamp(value.getUpdated()));
+        });
+    }
+
+    /**
+     * Makes sure none of the rows collide with a different row already in the table: the same value under
+     * another ID, or the same ID holding another value. An upsert would quietly keep one of the two and
+     * leave alts pointing at the wrong IP or player.
+     * Rows which already exist exactly as given are fine, a resumed migration replays them.
+     * @param rows values keyed by ID
+     * @throws StorageException on the first conflict found
+     */
+    private void checkConflicts(String table, String column, Map<Long, String> rows) throws StorageException {
+        // The unique keys compare case-insensitively
+        Map<String, Long> ids = new HashMap<>();
+        for (Map.Entry<Long, String> kvp : rows.entrySet()) {
+            ids.put(kvp.getValue().toLowerCase(Locale.US), kvp.getKey());
+        }
+
+        List<Map.Entry<Long, String>> entries = new ArrayList<>(rows.entrySet());
+        for (int i = 0; i < entries.size(); i += loadBatchSize) {
+            List<Map.Entry<Long, String>> chunk = entries.subList(i, Math.min(i + loadBatchSize, entries.size()));
+
+            StringBuilder byID = new StringBuilder();
+            StringBuilder byValue = new StringBuilder();
+            Object[] params = new Object[chunk.size() * 2];
+            for (int j = 0; j < chunk.size(); j++) {
+                byID.append(j == 0 ? "?" : ", ?");
+                byValue.append(j == 0 ? "?" : ", ?");
+                params[j] = chunk.get(j).getKey();
+                params[chunk.size() + j] = chunk.get(j).getValue();
             }
-            for (RawAltResult value : values) {
-                sql.execute("INSERT INTO `" + prefix + "alts` (`id`, `ip_id`, `player_id`, `server_id`, `count`, `created`, `updated`) VALUES (?, ?, ?, ?, ?, ?, ?);", value.getID(), value.getIPID(), value.getLongPlayerID(), value.getLongPlayerID(), value.getCount(), new Timestamp(value.getCreated()), new Timestamp(value.getUpdated()));
+
+            SQLQueryResult result;
+            try {
+                result = sql.query("SELECT `id`, `" + column + "` FROM `" + prefix + table + "` WHERE `id` IN (" + byID + ") OR `" + column + "` IN (" + byValue + ");", params);
+            } catch (SQLException ex) {
+                throw new StorageException(isAutomaticallyRecoverable(ex), ex);
             }
-            if (truncate) {
-                sql.execute("SET FOREIGN_KEY_CHECKS = 1;");
+            for (Object[] row : result.getData()) {
+                long id = ((Number) row[0]).longValue();
+                String value = (String) row[1];
+                String expectedValue = rows.get(id);
+                Long expectedID = ids.get(value.toLowerCase(Locale.US));
+                if ((expectedValue != null && !expectedValue.equalsIgnoreCase(value)) || (expectedID != null && expectedID != id)) {
+                    throw new StorageException(false, "Could not load " + table + ": ID " + id + " already holds " + column + " \"" + value + "\", which conflicts with the data being loaded.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads values on a single connection so the session-scoped FOREIGN_KEY_CHECKS applies to every insert.
+     * Inserts are sent as JDBC batches of loadBatchSize rows, each committed in its own transaction.
+     * Inserts must be upserts: a migration that died after some batches committed replays the whole page on resume.
+     */
+    private <T> void batchLoad(String table, String insert, Collection<T> values, boolean truncate, BatchBinder<T> binder) throws StorageException {
+        try (Connection connection = getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET FOREIGN_KEY_CHECKS = 0;");
+            }
+
+            // Pooled connections are reused, so the setting has to be restored no matter what fails after this
+            try {
+                if (truncate) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("TRUNCATE `" + prefix + table + "`;");
+                    }
+                }
+
+                connection.setAutoCommit(false);
+                try (PreparedStatement statement = connection.prepareStatement(insert)) {
+                    int batched = 0;
+                    for (T value : values) {
+                        binder.bind(statement, value);
+                        statement.addBatch();
+                        if (++batched >= loadBatchSize) {
+                            statement.executeBatch();
+                            connection.commit();
+                            batched = 0;
+                        }
+                    }
+                    if (batched > 0) {
+                        statement.executeBatch();
+                        connection.commit();
+                    }
+                } catch (SQLException ex) {
+                    connection.rollback();
+                    throw ex;
+                }
+            } finally {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET FOREIGN_KEY_CHECKS = 1;");
+                }
             }
         } catch (SQLException ex) {
             throw new StorageException(isAutomaticallyRecoverable(ex), ex);
@@ -508,13 +1069,13 @@ public class MySQL extends AbstractSQL {
         }
 
         String playerID = (String) row[2];
-        if (!ValidationUtil.isValidIp(playerID)) {
+        if (!ValidationUtil.isValidUuid(playerID)) {
             logger.warn("Alt ID " + row[0] + " has an invalid player ID \"" + row[2] + "\".");
             return null;
         }
 
         String serverID = (String) row[3];
-        if (!ValidationUtil.isValidIp(serverID)) {
+        if (!ValidationUtil.isValidUuid(serverID)) {
             logger.warn("Alt ID " + row[0] + " has an invalid server ID \"" + row[3] + "\".");
             return null;
         }
@@ -531,40 +1092,248 @@ public class MySQL extends AbstractSQL {
         );
     }
 
-    private long getLongIPIDExpensive(String ip) throws SQLException, StorageException {
-        // A majority of the time there'll be an ID
-        SQLQueryResult result = sql.query("SELECT `id` FROM `" + prefix + "ips` WHERE `ip`=?;", ip);
-        if (result.getData().length == 1) {
-            return ((Number) result.getData()[0][0]).longValue();
+    /**
+     * Same rows as get_alts_ip/get_alts_player, but for every value at once with one IN query per loadBatchSize values.
+     * Joins on the unique ip/uuid columns directly, so no ID lookups are needed first.
+     */
+    private Set<AltResult> getByValues(String alias, String column, List<String> values, int days) throws StorageException {
+        Set<AltResult> retVal = new LinkedHashSet<>();
+        for (int i = 0; i < values.size(); i += loadBatchSize) {
+            List<String> chunk = values.subList(i, Math.min(i + loadBatchSize, values.size()));
+
+            StringBuilder query = new StringBuilder("SELECT `v`.`id`, `i`.`ip`, `p`.`uuid`, `s`.`uuid`, `s`.`name`, `v`.`count`, `v`.`created`, `v`.`updated` FROM `" + prefix + "alts` `v` "
+                    + "JOIN `" + prefix + "ips` `i` ON `i`.`id`=`v`.`ip_id` "
+                    + "JOIN `" + prefix + "players` `p` ON `p`.`id`=`v`.`player_id` "
+                    + "JOIN `" + prefix + "servers` `s` ON `s`.`id`=`v`.`server_id` "
+                    + "WHERE `v`.`updated` >= DATE_SUB(CURRENT_TIMESTAMP, INTERVAL ? DAY) AND `" + alias + "`.`" + column + "` IN (");
+            Object[] params = new Object[chunk.size() + 1];
+            params[0] = days;
+            for (int j = 0; j < chunk.size(); j++) {
+                query.append(j == 0 ? "?" : ", ?");
+                params[j + 1] = chunk.get(j);
+            }
+            query.append(");");
+
+            SQLQueryResult result;
+            try {
+                result = sql.query(query.toString(), params);
+            } catch (SQLException ex) {
+                throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+            }
+            for (Object[] row : result.getData()) {
+                retVal.add(getResult(row));
+            }
         }
+        retVal.remove(null);
+        return retVal;
+    }
 
-        // No ID, generate one
-        SQLExecuteResult r = sql.execute("INSERT INTO `" + prefix + "ips` (`ip`) VALUES (?);", ip);
-        if (r.getAutoGeneratedKeys().length != 1) {
-            throw new StorageException(false, "Could not get generated keys from inserted IP.");
+    /**
+     * Looks up an IP's ID without creating one.
+     * @return the ID, or -1 if the IP has never been seen
+     */
+    private long findLongIPID(String ip) throws StorageException {
+        Long retVal = longIPIDCache.getIfPresent(ip);
+        if (retVal != null) {
+            return retVal;
+        }
+        if (missingIPCache.getIfPresent(ip) != null) {
+            return -1L;
+        }
+
+        SQLQueryResult result;
+        try {
+            result = sql.query("SELECT `id` FROM `" + prefix + "ips` WHERE `ip`=?;", ip);
+        } catch (SQLException ex) {
+            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+        }
+        if (result.getData().length != 1) {
+            missingIPCache.put(ip, Boolean.TRUE);
+            return -1L;
         }
-        long id = ((Number) r.getAutoGeneratedKeys()[0]).longValue();
-        handler.ipIDCreationCallback(ip, id, this);
+        long id = ((Number) result.getData()[0][0]).longValue();
+        longIPIDCache.put(ip, id);
         return id;
     }
 
-    private long getLongPlayerIDExpensive(UUID uuid) throws SQLException, StorageException {
-        // A majority of the time there'll be an ID
-        SQLQueryResult result = sql.query("SELECT `id` FROM `" + prefix + "players` WHERE `uuid`=?;", uuid.toString());
-        if (result.getData().length == 1) {
-            return ((Number) result.getData()[0][0]).longValue();
+    /**
+     * Looks up a player's ID without creating one.
+     * @return the ID, or -1 if the player has never been seen
+     */
+    private long findLongPlayerID(UUID playerID) throws StorageException {
+        Long retVal = longPlayerIDCache.getIfPresent(playerID);
+        if (retVal != null) {
+            return retVal;
+        }
+        if (missingPlayerCache.getIfPresent(playerID) != null) {
+            return -1L;
         }
 
-        // No ID, generate one
-        SQLExecuteResult r = sql.execute("INSERT INTO `" + prefix + "players` (`uuid`) VALUES (?);", uuid.toString());
-        if (r.getAutoGeneratedKeys().length != 1) {
-            throw new StorageException(false, "Could not get generated keys from inserted player.");
+        SQLQueryResult result;
+        try {
+            result = sql.query("SELECT `id` FROM `" + prefix + "players` WHERE `uuid`=?;", playerID.toString());
+        } catch (SQLException ex) {
+            throw new StorageException(isAutomaticallyRecoverable(ex), ex);
+        }
+        if (result.getData().length != 1) {
+            missingPlayerCache.put(playerID, Boolean.TRUE);
+            return -1L;
         }
-        long id = ((Number) r.getAutoGeneratedKeys()[0]).longValue();
-        handler.playerIDCreationCallback(uuid, id, this);
+        long id = ((Number) result.getData()[0][0]).longValue();
+        longPlayerIDCache.put(playerID, id);
         return id;
     }
 
+    private long getLongIPIDExpensive(String ip) throws SQLException, StorageException {
+        Set<String> created = new HashSet<>();
+        Map<String, Long> ids = resolveIDs("ips", "ip", Collections.singleton(ip), created);
+        if (ids.size() != 1) {
+            throw new StorageException(false, "Could not get ID of inserted IP.");
+        }
+        long id = ids.values().iterator().next();
+        missingIPCache.invalidate(ip);
+        if (!created.isEmpty()) {
+            handler.ipIDCreationCallback(ip, id, this);
+        }
+        return id;
+    }
+
+    private long getLongPlayerIDExpensive(UUID uuid) throws SQLException, StorageException {
+        Set<String> created = new HashSet<>();
+        Map<String, Long> ids = resolveIDs("players", "uuid", Collections.singleton(uuid.toString()), created);
+        if (ids.size() != 1) {
+            throw new StorageException(false, "Could not get ID of inserted player.");
+        }
+        long id = ids.values().iterator().next();
+        missingPlayerCache.invalidate(uuid);
+        if (!created.isEmpty()) {
+            handler.playerIDCreationCallback(uuid, id, this);
+        }
+        return id;
+    }
+
+    /**
+     * Gets or creates IDs for the values, loadBatchSize values at a time.
+     * Each chunk reads the IDs which already exist, inserts the rest with an upsert that leaves existing rows
+     * alone (so servers creating the same value at once don't race on the unique key), then reads their IDs.
+     * @param created filled with the values which didn't exist before. Another server may have created one of them
+     *                at the same time, which only means a redundant callback
+     * @return IDs keyed by the values as they were given
+     */
+    private Map<String, Long> resolveIDs(String table, String column, Collection<String> values, Set<String> created) throws SQLException {
+        Map<String, Long> retVal = new HashMap<>();
+        List<String> chunk = new ArrayList<>();
+        try (Connection connection = getConnection()) {
+            Iterator<String> i = values.iterator();
+            while (i.hasNext()) {
+                chunk.add(i.next());
+                if (chunk.size() >= loadBatchSize || !i.hasNext()) {
+                    Map<String, Long> existing = selectIDs(connection, table, column, chunk);
+                    retVal.putAll(existing);
+
+                    List<String> missing = new ArrayList<>();
+                    for (String value : chunk) {
+                        if (!existing.containsKey(value)) {
+                            missing.add(value);
+                        }
+                    }
+                    if (!missing.isEmpty()) {
+                        insertValues(connection, table, column, missing);
+                        Map<String, Long> inserted = selectIDs(connection, table, column, missing);
+                        retVal.putAll(inserted);
+                        created.addAll(inserted.keySet());
+                    }
+                    chunk.clear();
+                }
+            }
+        }
+        return retVal;
+    }
+
+    private void insertValues(Connection connection, String table, String column, List<String> values) throws SQLException {
+        StringBuilder insert = new StringBuilder("INSERT INTO `" + prefix + table + "` (`" + column + "`) VALUES ");
+        for (int i = 0; i < values.size(); i++) {
+            insert.append(i == 0 ? "(?)" : ", (?)");
+        }
+        insert.append(" ON DUPLICATE KEY UPDATE `id`=`id`;");
+
+        try (PreparedStatement statement = connection.prepareStatement(insert.toString())) {
+            for (int i = 0; i < values.size(); i++) {
+                statement.setString(i + 1, values.get(i));
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * @return the IDs of the values which exist, keyed by the values as they were given
+     */
+    private Map<String, Long> selectIDs(Connection connection, String table, String column, List<String> values) throws SQLException {
+        // The unique keys compare case-insensitively, so the stored value may not be written the same way
+        Map<String, String> given = new HashMap<>();
+        StringBuilder select = new StringBuilder("SELECT `id`, `" + column + "` FROM `" + prefix + table + "` WHERE `" + column + "` IN (");
+        for (int i = 0; i < values.size(); i++) {
+            given.put(values.get(i).toLowerCase(Locale.US), values.get(i));
+            select.append(i == 0 ? "?" : ", ?");
+        }
+        select.append(");");
+
+        Map<String, Long> retVal = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(select.toString())) {
+            for (int i = 0; i < values.size(); i++) {
+                statement.setString(i + 1, values.get(i));
+            }
+            try (ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    String value = given.get(set.getString(2).toLowerCase(Locale.US));
+                    if (value != null) {
+                        retVal.put(value, set.getLong(1));
+                    }
+                }
+            }
+        }
+        return retVal;
+    }
+
+    private interface BatchBinder<T> {
+        void bind(PreparedStatement statement, T value) throws SQLException;
+    }
+
+    private static class PostRequest {
+        private final String ip;
+        private final UUID playerID;
+        private final long time;
+
+        private PostRequest(String ip, UUID playerID, long time) {
+            this.ip = ip;
+            this.playerID = playerID;
+            this.time = time;
+        }
+    }
+
+    private static class AltKey {
+        private final long longIPID;
+        private final long longPlayerID;
+
+        private final int hc;
+
+        private AltKey(long longIPID, long longPlayerID) {
+            this.longIPID = longIPID;
+            this.longPlayerID = longPlayerID;
+
+            hc = Objects.hash(longIPID, longPlayerID);
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof AltKey)) return false;
+            AltKey that = (AltKey) o;
+            return longIPID == that.longIPID && longPlayerID == that.longPlayerID;
+        }
+
+        public int hashCode() { return hc; }
+    }
+
     protected boolean isAutomaticallyRecoverable(SQLException ex) {
         if (
                 ex.getErrorCode() == MysqlErrorNumbers.ER_LOCK_WAIT_TIMEOUT
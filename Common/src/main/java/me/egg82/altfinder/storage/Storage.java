@@ -1,5 +1,7 @@
 package me.egg82.altfinder.storage;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import me.egg82.altfinder.core.*;
@@ -8,10 +10,43 @@ public interface Storage {
     void close();
     boolean isClosed();
 
-    Set<AltResult> getQueue() throws StorageException;
+    /**
+     * Reads alts created or updated after the (afterUpdated, afterID) cursor, in (updated, ID) order, at most size rows at a time.
+     * Rows updated within the current second are left for the next read, since more may still be written with the same time.
+     */
+    QueuePage<QueueResult> getQueue(long afterUpdated, long afterID, int size) throws StorageException;
+    long getLastAltID() throws StorageException;
+    long getLastUpdated() throws StorageException;
     Set<AltResult> getByIP(String ip, int days) throws StorageException;
     Set<AltResult> getByPlayer(UUID playerID, int days) throws StorageException;
-    PostAltResult post(UUID playerID, String ip) throws StorageException;
+    /**
+     * getByIP for many IPs at once.
+     */
+    Set<AltResult> getByIPs(Collection<String> ips, int days) throws StorageException;
+    /**
+     * getByPlayer for many players at once.
+     */
+    Set<AltResult> getByPlayers(Collection<UUID> playerIDs, int days) throws StorageException;
+    /**
+     * Finds every player transitively linked to the player through shared IPs, walking one hop at a time.
+     * One hop is player -> IP -> player.
+     * @return the shortest hop distance of each linked player, nearest first, including the player itself at 0.
+     *         At most maxPlayers entries, and empty if the player has never been seen
+     */
+    Map<UUID, Integer> getLinkedPlayers(UUID playerID, int maxDepth, int maxPlayers) throws StorageException;
+    /**
+     * Records a login. A new row is created at the login time. An existing row's updated time is always the write
+     * time, since the change feed pages by it and can't see rows written behind its cursor.
+     */
+    PostAltResult post(UUID playerID, String ip, long time) throws StorageException;
+    /**
+     * Deletes every alt row for the IP. The IP keeps its ID, so IDs cached elsewhere stay valid.
+     */
+    void delete(String ip) throws StorageException;
+    /**
+     * Deletes every alt row for the player. The player keeps its ID, so IDs cached elsewhere stay valid.
+     */
+    void delete(UUID playerID) throws StorageException;
 
     void setServerRaw(long longServerID, UUID serverID, String name) throws StorageException;
     void setIPRaw(long longIPID, String ip) throws StorageException;
@@ -23,15 +58,24 @@ public interface Storage {
     long getLongPlayerID(UUID playerID);
     long getLongIPID(String ip);
 
+    /**
+     * Gets the IDs of many IPs at once, creating any which don't exist yet.
+     */
+    Map<String, Long> resolveIPIDs(Collection<String> ips) throws StorageException;
+    /**
+     * Gets the IDs of many players at once, creating any which don't exist yet.
+     */
+    Map<UUID, Long> resolvePlayerIDs(Collection<UUID> playerIDs) throws StorageException;
+
     Set<ServerResult> dumpServers() throws StorageException;
     void loadServers(Set<ServerResult> servers) throws StorageException;
 
-    Set<IPResult> dumpIPs(long begin, int size) throws StorageException;
+    DumpPage<IPResult> dumpIPs(long afterID, int size) throws StorageException;
     void loadIPs(Set<IPResult> ips, boolean truncate) throws StorageException;
 
-    Set<PlayerResult> dumpPlayers(long begin, int size) throws StorageException;
+    DumpPage<PlayerResult> dumpPlayers(long afterID, int size) throws StorageException;
     void loadPlayers(Set<PlayerResult> players, boolean truncate) throws StorageException;
 
-    Set<RawAltResult> dumpAltValues(long begin, int size) throws StorageException;
+    DumpPage<RawAltResult> dumpAltValues(long afterID, int size) throws StorageException;
     void loadAltValues(Set<RawAltResult> values, boolean truncate) throws StorageException;
 }
@@ -0,0 +1,265 @@
+package me.egg82.altfinder.storage;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import me.egg82.altfinder.core.*;
+import me.egg82.altfinder.utils.CheckpointUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams everything from one storage engine into one or more others.
+ * Pages are read by a dedicated thread into a bounded buffer while the calling thread writes them,
+ * so reads and writes overlap. After every written page the stage and last copied ID are saved to
+ * the checkpoint file (if any) so an interrupted migration picks up where it left off.
+ * Targets may have committed part of a page before a crash, so a resumed page is written again:
+ * Storage.load* implementations have to treat rows which already exist as updates.
+ */
+public class StorageMigrator {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private enum Stage {
+        SERVERS,
+        IPS,
+        PLAYERS,
+        ALTS,
+        DONE
+    }
+
+    private Storage source;
+    private ImmutableList<Storage> targets;
+    private int pageSize = 5000;
+    private int bufferedPages = 4;
+    private File checkpointFile = null;
+    private long reportInterval = 5000L;
+
+    private StorageMigrator() { }
+
+    public static StorageMigrator.Builder builder(Storage source) { return new StorageMigrator.Builder(source); }
+
+    public static class Builder {
+        private final StorageMigrator result = new StorageMigrator();
+        private final List<Storage> targets = new ArrayList<>();
+
+        private Builder(Storage source) {
+            if (source == null) {
+                throw new IllegalArgumentException("source cannot be null.");
+            }
+            result.source = source;
+        }
+
+        public StorageMigrator.Builder target(Storage value) {
+            if (value == null) {
+                throw new IllegalArgumentException("value cannot be null.");
+            }
+            if (value == result.source) {
+                throw new IllegalArgumentException("value cannot be the source.");
+            }
+            targets.add(value);
+            return this;
+        }
+
+        public StorageMigrator.Builder pageSize(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+            result.pageSize = value;
+            return this;
+        }
+
+        public StorageMigrator.Builder bufferedPages(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value cannot be <= 0.");
+            }
+            result.bufferedPages = value;
+            return this;
+        }
+
+        public StorageMigrator.Builder checkpoint(File value) {
+            result.checkpointFile = value;
+            return this;
+        }
+
+        public StorageMigrator.Builder reportInterval(long value, TimeUnit unit) {
+            result.reportInterval = unit.toMillis(value);
+            return this;
+        }
+
+        public StorageMigrator build() {
+            if (targets.isEmpty()) {
+                throw new IllegalStateException("At least one target is required.");
+            }
+            result.targets = ImmutableList.copyOf(targets);
+            return result;
+        }
+    }
+
+    public void migrate() throws StorageException, IOException {
+        Checkpoint checkpoint = readCheckpoint();
+        if (checkpoint.stage != Stage.SERVERS || checkpoint.lastID > 0L) {
+            logger.info("Resuming migration at " + checkpoint.stage + " after ID " + checkpoint.lastID);
+        }
+
+        if (checkpoint.stage == Stage.SERVERS) {
+            Set<ServerResult> servers = source.dumpServers();
+            for (Storage target : targets) {
+                target.loadServers(servers);
+            }
+            logger.info("Copied " + servers.size() + " servers");
+            checkpoint = writeCheckpoint(Stage.IPS, 0L);
+        }
+
+        if (checkpoint.stage == Stage.IPS) {
+            copyStage(Stage.IPS, checkpoint.lastID, source::dumpIPs, Storage::loadIPs);
+            checkpoint = writeCheckpoint(Stage.PLAYERS, 0L);
+        }
+
+        if (checkpoint.stage == Stage.PLAYERS) {
+            copyStage(Stage.PLAYERS, checkpoint.lastID, source::dumpPlayers, Storage::loadPlayers);
+            checkpoint = writeCheckpoint(Stage.ALTS, 0L);
+        }
+
+        if (checkpoint.stage == Stage.ALTS) {
+            copyStage(Stage.ALTS, checkpoint.lastID, source::dumpAltValues, Storage::loadAltValues);
+            writeCheckpoint(Stage.DONE, 0L);
+        }
+
+        if (checkpointFile != null) {
+            Files.deleteIfExists(checkpointFile.toPath());
+        }
+        logger.info("Migration complete");
+    }
+
+    private <T> void copyStage(Stage stage, long afterID, PageReader<T> reader, PageWriter<T> writer) throws StorageException, IOException {
+        BlockingQueue<DumpPage<T>> buffer = new ArrayBlockingQueue<>(bufferedPages);
+        DumpPage<T> end = new DumpPage<>(Collections.emptySet(), -1L, 0);
+        AtomicReference<StorageException> readError = new AtomicReference<>(null);
+
+        ExecutorService producer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("AltFinder-Migrate-" + stage + "-%d").setDaemon(true).build());
+        producer.submit(() -> {
+            long cursor = afterID;
+            try {
+                while (true) {
+                    DumpPage<T> page = reader.read(cursor, pageSize);
+                    if (page.getRows() == 0) {
+                        break;
+                    }
+                    buffer.put(page);
+                    cursor = page.getLastID();
+                    if (page.isLast(pageSize)) {
+                        break;
+                    }
+                }
+            } catch (StorageException ex) {
+                readError.set(ex);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                buffer.put(end);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        long start = System.currentTimeMillis();
+        long lastReport = start;
+        long copied = 0L;
+        // A fresh stage replaces whatever the targets had, a resumed one appends
+        boolean truncate = afterID <= 0L;
+
+        try {
+            while (true) {
+                DumpPage<T> page;
+                try {
+                    page = buffer.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new StorageException(true, "Migration was interrupted.", ex);
+                }
+                if (page == end) {
+                    break;
+                }
+
+                for (Storage target : targets) {
+                    writer.write(target, page.getValues(), truncate);
+                }
+                truncate = false;
+                copied += page.getValues().size();
+                writeCheckpoint(stage, page.getLastID());
+
+                long now = System.currentTimeMillis();
+                if (now - lastReport >= reportInterval) {
+                    lastReport = now;
+                    logger.info(stage + ": copied " + copied + " rows, up to ID " + page.getLastID() + " (" + getRate(copied, now - start) + " rows/s)");
+                }
+            }
+        } finally {
+            producer.shutdownNow();
+        }
+
+        if (readError.get() != null) {
+            throw readError.get();
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        logger.info(stage + ": finished, copied " + copied + " rows in " + elapsed + "ms (" + getRate(copied, elapsed) + " rows/s)");
+    }
+
+    private long getRate(long rows, long elapsedMillis) { return elapsedMillis <= 0L ? rows : rows * 1000L / elapsedMillis; }
+
+    private Checkpoint readCheckpoint() throws IOException {
+        Properties properties = checkpointFile != null ? CheckpointUtil.read(checkpointFile) : null;
+        if (properties == null) {
+            return new Checkpoint(Stage.SERVERS, 0L);
+        }
+
+        try {
+            return new Checkpoint(
+                    Stage.valueOf(properties.getProperty("stage", Stage.SERVERS.name())),
+                    Long.parseLong(properties.getProperty("last-id", "0"))
+            );
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Migration checkpoint is corrupt.", ex);
+        }
+    }
+
+    private Checkpoint writeCheckpoint(Stage stage, long lastID) throws IOException {
+        Checkpoint retVal = new Checkpoint(stage, lastID);
+        if (checkpointFile == null) {
+            return retVal;
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("stage", stage.name());
+        properties.setProperty("last-id", String.valueOf(lastID));
+        CheckpointUtil.write(checkpointFile, properties, "AltFinder migration checkpoint");
+        return retVal;
+    }
+
+    private interface PageReader<T> {
+        DumpPage<T> read(long afterID, int size) throws StorageException;
+    }
+
+    private interface PageWriter<T> {
+        void write(Storage target, Set<T> values, boolean truncate) throws StorageException;
+    }
+
+    private static class Checkpoint {
+        private final Stage stage;
+        private final long lastID;
+
+        private Checkpoint(Stage stage, long lastID) {
+            this.stage = stage;
+            this.lastID = lastID;
+        }
+    }
+}
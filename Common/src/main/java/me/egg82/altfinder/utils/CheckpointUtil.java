@@ -0,0 +1,38 @@
+package me.egg82.altfinder.utils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Reads and writes small properties files which track how far a long-running job has got.
+ */
+public class CheckpointUtil {
+    private CheckpointUtil() {}
+
+    /**
+     * @return the checkpoint's properties, or null if there is no checkpoint yet
+     */
+    public static Properties read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        Properties retVal = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            retVal.load(reader);
+        }
+        return retVal;
+    }
+
+    public static void write(File file, Properties properties, String comments) throws IOException {
+        // Write then move, so a crash never leaves a half-written checkpoint
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            properties.store(writer, comments);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,313 @@
+package me.egg82.altfinder.utils;
+
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import me.egg82.altfinder.extended.CachedConfigValues;
+import me.egg82.altfinder.messaging.Messaging;
+import me.egg82.altfinder.messaging.MessagingException;
+import me.egg82.altfinder.messaging.RabbitMQ;
+import me.egg82.altfinder.services.*;
+import me.egg82.altfinder.storage.MySQL;
+import me.egg82.altfinder.storage.Storage;
+import me.egg82.altfinder.storage.StorageException;
+import me.egg82.altfinder.storage.StorageMigrator;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.objectmapping.ObjectMappingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the storage and messaging engines from config, in their configured order,
+ * along with the services which sit on top of them.
+ */
+public class EngineConfigUtil {
+    private static final Logger logger = LoggerFactory.getLogger(EngineConfigUtil.class);
+
+    private EngineConfigUtil() {}
+
+    public static void load(CachedConfigValues.Builder builder, ConfigurationNode config, File dataDirectory, UUID serverID, String serverName) {
+        ConfigurationNode storageNode = config.getNode("storage");
+        ConfigurationNode messagingNode = config.getNode("messaging");
+
+        setRedisLayout(storageNode.getNode("engines", "redis"));
+        setRedisFlushSize(storageNode.getNode("engines", "redis", "flush-size"));
+
+        AltLookupCache cache = getCache(storageNode.getNode("settings", "cache"));
+        ConfigurationNode graphNode = storageNode.getNode("settings", "alt-graph");
+        ConfigurationNode feedNode = storageNode.getNode("settings", "change-feed");
+        AltGraph graph = null;
+        if (graphNode.getNode("enabled").getBoolean(false)) {
+            // Logins on servers this one doesn't share a messaging engine with only ever reach it through the feed
+            if (feedNode.getNode("enabled").getBoolean(true)) {
+                graph = new AltGraph();
+            } else {
+                logger.warn("The alt graph needs the change feed to stay current. Enable storage.settings.change-feed to use it, lookups will go to storage.");
+            }
+        }
+        StorageReader reader = new StorageReader(storageNode.getNode("settings", "hedge-delay").getLong(0L), TimeUnit.MILLISECONDS, cache, graph);
+        StorageWriter writer = new StorageWriter(storageNode.getNode("settings", "threads-per-engine").getInt(4), storageNode.getNode("settings", "queue-per-engine").getInt(10000), cache, graph);
+        MessagingHandlerImpl handler = new MessagingHandlerImpl(writer, cache, graph);
+        ConfigurationNode dedupeNode = messagingNode.getNode("settings", "dedupe");
+        // Every engine delivers every message, so engines share one handler which drops the copies
+        DeduplicatingMessagingHandler messagingHandler = new DeduplicatingMessagingHandler(handler, dedupeNode.getNode("max-size").getLong(10000L), dedupeNode.getNode("window").getLong(30000L), TimeUnit.MILLISECONDS);
+
+        Map<String, Storage> namedStorage = getStorage(storageNode, serverID, serverName, handler);
+        List<Storage> storage = new ArrayList<>(namedStorage.values());
+        ChangeFeed changeFeed = getChangeFeed(feedNode, storage, new File(dataDirectory, "change-feed.properties"), cache, graph);
+        if (graph != null && !storage.isEmpty()) {
+            if (changeFeed != null) {
+                loadGraph(graph, storage.get(0), graphNode.getNode("page-size").getInt(5000));
+            } else {
+                // Never marked loaded, so lookups keep going to storage
+                logger.error("Not loading the alt graph without a change feed, lookups will keep going to storage.");
+            }
+        }
+
+        builder.storage(namedStorage)
+                .messaging(getMessaging(messagingNode, serverID, messagingHandler))
+                .dedupe(messagingHandler)
+                .changeFeed(changeFeed)
+                .cache(cache)
+                .graph(graph)
+                .reader(reader)
+                .writer(writer);
+    }
+
+    /**
+     * Closes everything load() built.
+     */
+    public static void close(CachedConfigValues cachedConfig) {
+        if (cachedConfig.getChangeFeed() != null) {
+            cachedConfig.getChangeFeed().close();
+        }
+        if (cachedConfig.getReader() != null) {
+            cachedConfig.getReader().close();
+        }
+        // Queued writes finish before the engines they're going to are closed
+        if (cachedConfig.getWriter() != null) {
+            cachedConfig.getWriter().close();
+        }
+        for (Messaging messaging : cachedConfig.getMessaging()) {
+            messaging.close();
+        }
+        for (Storage storage : cachedConfig.getStorage()) {
+            storage.close();
+        }
+    }
+
+    /**
+     * @return the loaded storage engine with the key it's configured under in storage.engines, or null if it isn't loaded
+     */
+    public static Storage getStorage(CachedConfigValues cachedConfig, String name) { return cachedConfig.getStorageByName().get(name.toLowerCase(Locale.US)); }
+
+    /**
+     * Copies everything in the source engine into the target, picking up where an earlier copy between them left off.
+     * Blocks until it's done.
+     */
+    public static void migrate(Storage source, Storage target, String sourceName, String targetName, File dataDirectory) throws IOException, StorageException {
+        StorageMigrator.builder(source)
+                .target(target)
+                .checkpoint(new File(dataDirectory, "migration-" + sourceName.toLowerCase(Locale.US) + "-" + targetName.toLowerCase(Locale.US) + ".properties"))
+                .build()
+                .migrate();
+    }
+
+    private static void setRedisLayout(ConfigurationNode redisNode) {
+        String layoutName = redisNode.getNode("layout").getString("legacy");
+        Redis.Layout layout;
+        try {
+            layout = Redis.Layout.valueOf(layoutName.toUpperCase(Locale.US));
+        } catch (IllegalArgumentException ex) {
+            logger.warn("Redis layout \"" + layoutName + "\" is an unknown value. Using legacy layout.");
+            layout = Redis.Layout.LEGACY;
+        }
+
+        long ttl = redisNode.getNode("ttl").getLong(0L);
+        if (ttl < 0L) {
+            logger.warn("Redis TTL cannot be negative. Never expiring instead.");
+            ttl = 0L;
+        }
+        Redis.setLayout(layout, ttl, TimeUnit.MILLISECONDS);
+    }
+
+    private static void setRedisFlushSize(ConfigurationNode flushSizeNode) {
+        int flushSize = flushSizeNode.getInt(500);
+        if (flushSize <= 0) {
+            logger.warn("Redis flush size must be at least 1. Using default value.");
+            flushSize = 500;
+        }
+        Redis.setFlushSize(flushSize);
+    }
+
+    private static AltLookupCache getCache(ConfigurationNode cacheNode) {
+        if (!cacheNode.getNode("enabled").getBoolean(true)) {
+            return null;
+        }
+        return new AltLookupCache(cacheNode.getNode("max-size").getLong(10000L), cacheNode.getNode("time").getLong(30000L), TimeUnit.MILLISECONDS);
+    }
+
+    private static void loadGraph(AltGraph graph, Storage storage, int pageSize) {
+        // Can take a while on a large database, lookups go to storage until it's done
+        ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("AltFinder-AltGraph-%d").setDaemon(true).build());
+        loader.execute(() -> {
+            try {
+                graph.load(storage, pageSize);
+            } catch (StorageException ex) {
+                logger.error("Could not load alt graph, lookups will keep going to storage: " + ex.getMessage(), ex);
+            }
+        });
+        loader.shutdown();
+    }
+
+    private static ChangeFeed getChangeFeed(ConfigurationNode feedNode, List<Storage> storage, File checkpointFile, AltLookupCache cache, AltGraph graph) {
+        List<ChangeFeed.Listener> listeners = new ArrayList<>();
+        if (cache != null) {
+            listeners.add(ChangeFeed.invalidating(cache));
+        }
+        if (graph != null) {
+            listeners.add(graph.listener());
+        }
+        if (!feedNode.getNode("enabled").getBoolean(true) || storage.isEmpty() || listeners.isEmpty()) {
+            return null;
+        }
+
+        try {
+            // Followed on the master, which every write reaches first
+            return ChangeFeed.builder(storage.get(0), alts -> {
+                for (ChangeFeed.Listener listener : listeners) {
+                    listener.accept(alts);
+                }
+            })
+                    .pageSize(feedNode.getNode("page-size").getInt(500))
+                    .interval(feedNode.getNode("min-interval").getLong(500L), feedNode.getNode("max-interval").getLong(10000L), TimeUnit.MILLISECONDS)
+                    .checkpoint(checkpointFile)
+                    .build();
+        } catch (IOException | StorageException ex) {
+            logger.error("Could not start change feed: " + ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    private static Map<String, Storage> getStorage(ConfigurationNode storageNode, UUID serverID, String serverName, StorageHandler handler) {
+        Map<String, Storage> retVal = new LinkedHashMap<>();
+        for (String name : getOrder(storageNode)) {
+            ConfigurationNode engineNode = storageNode.getNode("engines", name);
+            if (!engineNode.getNode("enabled").getBoolean(false)) {
+                continue;
+            }
+
+            if (name.equalsIgnoreCase("mysql")) {
+                Storage storage = getMySQL(engineNode.getNode("connection"), storageNode.getNode("settings"), serverID, serverName, handler);
+                if (storage != null) {
+                    retVal.put(name.toLowerCase(Locale.US), storage);
+                }
+            } else {
+                logger.warn("Storage engine \"" + name + "\" is not supported yet. Skipping it.");
+            }
+        }
+
+        if (retVal.isEmpty()) {
+            logger.warn("No storage engines are available. Alts will be stored in legacy SQL storage (storage.method).");
+        }
+        return retVal;
+    }
+
+    private static Storage getMySQL(ConfigurationNode connectionNode, ConfigurationNode settingsNode, UUID serverID, String serverName, StorageHandler handler) {
+        String address = connectionNode.getNode("address").getString("127.0.0.1:3306");
+        int loadBatchSize = settingsNode.getNode("load-batch-size").getInt(1000);
+        if (loadBatchSize <= 0) {
+            logger.warn("Storage load batch size must be at least 1. Using default value.");
+            loadBatchSize = 1000;
+        }
+        long maxIPs = settingsNode.getNode("id-cache", "max-ips").getLong(250000L);
+        if (maxIPs <= 0L) {
+            logger.warn("Storage ID cache max IPs must be at least 1. Using default value.");
+            maxIPs = 250000L;
+        }
+        long maxPlayers = settingsNode.getNode("id-cache", "max-players").getLong(250000L);
+        if (maxPlayers <= 0L) {
+            logger.warn("Storage ID cache max players must be at least 1. Using default value.");
+            maxPlayers = 250000L;
+        }
+        try {
+            return MySQL.builder(serverID, serverName, handler)
+                    .url(getHost(address), getPort(address, 3306), connectionNode.getNode("database").getString("altfinder"), connectionNode.getNode("prefix").getString("altfinder_"))
+                    .credentials(connectionNode.getNode("username").getString(""), connectionNode.getNode("password").getString(""))
+                    .options(connectionNode.getNode("options").getString("useSSL=false&useUnicode=true&characterEncoding=utf8"))
+                    .poolSize(settingsNode.getNode("min-idle").getInt(4), settingsNode.getNode("max-pool-size").getInt(4))
+                    .life(settingsNode.getNode("max-lifetime").getLong(1800000L), settingsNode.getNode("timeout").getLong(5000L))
+                    .postBatch(settingsNode.getNode("post-batch", "size").getInt(100), Math.max(0L, settingsNode.getNode("post-batch", "delay").getLong(5L)))
+                    .loadBatchSize(loadBatchSize)
+                    .idCache(maxIPs, maxPlayers, Math.max(0L, settingsNode.getNode("id-cache", "expire-after-access").getLong(7200000L)), TimeUnit.MILLISECONDS)
+                    .build();
+        } catch (IOException | StorageException ex) {
+            logger.error("Could not create MySQL storage engine: " + ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    private static List<Messaging> getMessaging(ConfigurationNode messagingNode, UUID serverID, MessagingHandler handler) {
+        List<Messaging> retVal = new ArrayList<>();
+        for (String name : getOrder(messagingNode)) {
+            ConfigurationNode engineNode = messagingNode.getNode("engines", name);
+            if (!engineNode.getNode("enabled").getBoolean(false)) {
+                continue;
+            }
+
+            if (name.equalsIgnoreCase("rabbitmq")) {
+                Messaging messaging = getRabbitMQ(engineNode.getNode("connection"), messagingNode.getNode("settings"), serverID, handler);
+                if (messaging != null) {
+                    retVal.add(messaging);
+                }
+            } else {
+                logger.warn("Messaging engine \"" + name + "\" is not supported yet. Skipping it.");
+            }
+        }
+        return retVal;
+    }
+
+    private static Messaging getRabbitMQ(ConfigurationNode connectionNode, ConfigurationNode settingsNode, UUID serverID, MessagingHandler handler) {
+        String address = connectionNode.getNode("address").getString("127.0.0.1:5672");
+        try {
+            return RabbitMQ.builder(serverID, handler)
+                    .url(getHost(address), getPort(address, 5672), connectionNode.getNode("v-host").getString("/"))
+                    .credentials(connectionNode.getNode("username").getString("guest"), connectionNode.getNode("password").getString("guest"))
+                    .timeout(settingsNode.getNode("timeout").getInt(5000))
+                    .build();
+        } catch (MessagingException ex) {
+            logger.error("Could not create RabbitMQ messaging engine: " + ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    private static List<String> getOrder(ConfigurationNode node) {
+        try {
+            return node.getNode("order").getList(TypeToken.of(String.class));
+        } catch (ObjectMappingException ex) {
+            logger.error(ex.getMessage(), ex);
+            return new ArrayList<>();
+        }
+    }
+
+    private static String getHost(String address) {
+        int portIndex = address.lastIndexOf(':');
+        return portIndex > -1 ? address.substring(0, portIndex) : address;
+    }
+
+    private static int getPort(String address, int defaultPort) {
+        int portIndex = address.lastIndexOf(':');
+        if (portIndex > -1) {
+            try {
+                return Integer.parseInt(address.substring(portIndex + 1));
+            } catch (NumberFormatException ignored) { }
+        }
+        logger.warn("Port in \"" + address + "\" is an unknown value. Using default value.");
+        return defaultPort;
+    }
+}
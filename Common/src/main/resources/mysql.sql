@@ -99,9 +99,25 @@ BEGIN
 END ;;
 DELIMITER ;
 
+DROP PROCEDURE IF EXISTS `{prefix}post_alt`;
+DELIMITER ;;
+CREATE PROCEDURE `{prefix}post_alt`(`in_ip_id` BIGINT UNSIGNED, `in_player_id` BIGINT UNSIGNED, `in_server_id` BIGINT UNSIGNED)
+BEGIN
+  INSERT INTO `{prefix}alts` (`ip_id`, `player_id`, `server_id`) VALUES (`in_ip_id`, `in_player_id`, `in_server_id`)
+  ON DUPLICATE KEY UPDATE `server_id` = `in_server_id`, `count` = `count` + 1, `updated` = CURRENT_TIMESTAMP();
+  SELECT
+    `v`.`id`,
+    `v`.`count`,
+    `v`.`created`,
+    `v`.`updated`
+  FROM `{prefix}alts` `v`
+  WHERE `v`.`ip_id` = `in_ip_id` AND `v`.`player_id` = `in_player_id`;
+END ;;
+DELIMITER ;
+
 DROP PROCEDURE IF EXISTS `{prefix}get_queue_date`;
 DELIMITER ;;
-CREATE PROCEDURE `{prefix}get_queue_date`(`after` DATETIME)
+CREATE PROCEDURE `{prefix}get_queue_date`(`in_after` DATETIME, `in_limit` INT)
 BEGIN
   SELECT
     `v`.`id`,
@@ -112,17 +128,19 @@ BEGIN
     `v`.`count`,
     `v`.`created`,
     `v`.`updated`
-  FROM `{prefix}vpn_values` `v`
+  FROM `{prefix}alts` `v`
   JOIN `{prefix}ips` `i` ON `i`.`id` = `v`.`ip_id`
   JOIN `{prefix}players` `p` ON `p`.`id` = `v`.`player_id`
   JOIN `{prefix}servers` `s` ON `s`.`id` = `v`.`server_id`
-  WHERE `v`.`updated` > `after`;
+  WHERE `v`.`updated` > `in_after`
+  ORDER BY `v`.`updated`, `v`.`id`
+  LIMIT `in_limit`;
 END ;;
 DELIMITER ;
 
 DROP PROCEDURE IF EXISTS `{prefix}get_queue_id`;
 DELIMITER ;;
-CREATE PROCEDURE `{prefix}get_queue_id`(`after` BIGINT UNSIGNED)
+CREATE PROCEDURE `{prefix}get_queue_id`(`in_after` BIGINT UNSIGNED, `in_limit` INT)
 BEGIN
   SELECT
     `v`.`id`,
@@ -133,11 +151,13 @@ BEGIN
     `v`.`count`,
     `v`.`created`,
     `v`.`updated`
-  FROM `{prefix}vpn_values` `v`
+  FROM `{prefix}alts` `v`
   JOIN `{prefix}ips` `i` ON `i`.`id` = `v`.`ip_id`
   JOIN `{prefix}players` `p` ON `p`.`id` = `v`.`player_id`
   JOIN `{prefix}servers` `s` ON `s`.`id` = `v`.`server_id`
-  WHERE `v`.`id` > `after`;
+  WHERE `v`.`id` > `in_after`
+  ORDER BY `v`.`id`
+  LIMIT `in_limit`;
 END ;;
 DELIMITER ;
 
@@ -0,0 +1,15 @@
+DROP PROCEDURE IF EXISTS `{prefix}post_alt`;
+DELIMITER ;;
+CREATE PROCEDURE `{prefix}post_alt`(`in_ip_id` BIGINT UNSIGNED, `in_player_id` BIGINT UNSIGNED, `in_server_id` BIGINT UNSIGNED)
+BEGIN
+  INSERT INTO `{prefix}alts` (`ip_id`, `player_id`, `server_id`) VALUES (`in_ip_id`, `in_player_id`, `in_server_id`)
+  ON DUPLICATE KEY UPDATE `server_id` = `in_server_id`, `count` = `count` + 1, `updated` = CURRENT_TIMESTAMP();
+  SELECT
+    `v`.`id`,
+    `v`.`count`,
+    `v`.`created`,
+    `v`.`updated`
+  FROM `{prefix}alts` `v`
+  WHERE `v`.`ip_id` = `in_ip_id` AND `v`.`player_id` = `in_player_id`;
+END ;;
+DELIMITER ;
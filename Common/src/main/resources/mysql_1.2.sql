@@ -0,0 +1,45 @@
+DROP PROCEDURE IF EXISTS `{prefix}get_queue_date`;
+DELIMITER ;;
+CREATE PROCEDURE `{prefix}get_queue_date`(`in_after` DATETIME, `in_limit` INT)
+BEGIN
+  SELECT
+    `v`.`id`,
+    `i`.`ip` AS `ip`,
+    `p`.`uuid` AS `player_id`,
+    `s`.`uuid` AS `server_id`,
+    `s`.`name` AS `server_name`,
+    `v`.`count`,
+    `v`.`created`,
+    `v`.`updated`
+  FROM `{prefix}alts` `v`
+  JOIN `{prefix}ips` `i` ON `i`.`id` = `v`.`ip_id`
+  JOIN `{prefix}players` `p` ON `p`.`id` = `v`.`player_id`
+  JOIN `{prefix}servers` `s` ON `s`.`id` = `v`.`server_id`
+  WHERE `v`.`updated` > `in_after`
+  ORDER BY `v`.`updated`, `v`.`id`
+  LIMIT `in_limit`;
+END ;;
+DELIMITER ;
+
+DROP PROCEDURE IF EXISTS `{prefix}get_queue_id`;
+DELIMITER ;;
+CREATE PROCEDURE `{prefix}get_queue_id`(`in_after` BIGINT UNSIGNED, `in_limit` INT)
+BEGIN
+  SELECT
+    `v`.`id`,
+    `i`.`ip` AS `ip`,
+    `p`.`uuid` AS `player_id`,
+    `s`.`uuid` AS `server_id`,
+    `s`.`name` AS `server_name`,
+    `v`.`count`,
+    `v`.`created`,
+    `v`.`updated`
+  FROM `{prefix}alts` `v`
+  JOIN `{prefix}ips` `i` ON `i`.`id` = `v`.`ip_id`
+  JOIN `{prefix}players` `p` ON `p`.`id` = `v`.`player_id`
+  JOIN `{prefix}servers` `s` ON `s`.`id` = `v`.`server_id`
+  WHERE `v`.`id` > `in_after`
+  ORDER BY `v`.`id`
+  LIMIT `in_limit`;
+END ;;
+DELIMITER ;
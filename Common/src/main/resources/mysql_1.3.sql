@@ -0,0 +1,47 @@
+ALTER TABLE `{prefix}alts` ADD KEY `{prefix}updated_id` (`updated`, `id`);
+
+DROP PROCEDURE IF EXISTS `{prefix}get_queue_updated`;
+DELIMITER ;;
+CREATE PROCEDURE `{prefix}get_queue_updated`(`in_after_updated` DATETIME, `in_after_id` BIGINT UNSIGNED, `in_limit` INT)
+BEGIN
+  SELECT
+    `v`.`id`,
+    `i`.`ip` AS `ip`,
+    `p`.`uuid` AS `player_id`,
+    `s`.`uuid` AS `server_id`,
+    `s`.`name` AS `server_name`,
+    `v`.`count`,
+    `v`.`created`,
+    `v`.`updated`,
+    `v`.`ip_id`,
+    `v`.`player_id` AS `long_player_id`,
+    `v`.`server_id` AS `long_server_id`
+  FROM `{prefix}alts` `v`
+  JOIN `{prefix}ips` `i` ON `i`.`id` = `v`.`ip_id`
+  JOIN `{prefix}players` `p` ON `p`.`id` = `v`.`player_id`
+  JOIN `{prefix}servers` `s` ON `s`.`id` = `v`.`server_id`
+  WHERE (`v`.`updated` > `in_after_updated` OR (`v`.`updated` = `in_after_updated` AND `v`.`id` > `in_after_id`))
+    AND `v`.`updated` < CURRENT_TIMESTAMP()
+  ORDER BY `v`.`updated`, `v`.`id`
+  LIMIT `in_limit`;
+END ;;
+DELIMITER ;
+
+DROP PROCEDURE IF EXISTS `{prefix}get_queue_date`;
+DROP PROCEDURE IF EXISTS `{prefix}get_queue_id`;
+
+DROP PROCEDURE IF EXISTS `{prefix}post_alt`;
+DELIMITER ;;
+CREATE PROCEDURE `{prefix}post_alt`(`in_ip_id` BIGINT UNSIGNED, `in_player_id` BIGINT UNSIGNED, `in_server_id` BIGINT UNSIGNED, `in_created` DATETIME)
+BEGIN
+  INSERT INTO `{prefix}alts` (`ip_id`, `player_id`, `server_id`, `created`) VALUES (`in_ip_id`, `in_player_id`, `in_server_id`, `in_created`)
+  ON DUPLICATE KEY UPDATE `server_id` = `in_server_id`, `count` = `count` + 1, `updated` = CURRENT_TIMESTAMP();
+  SELECT
+    `v`.`id`,
+    `v`.`count`,
+    `v`.`created`,
+    `v`.`updated`
+  FROM `{prefix}alts` `v`
+  WHERE `v`.`ip_id` = `in_ip_id` AND `v`.`player_id` = `in_player_id`;
+END ;;
+DELIMITER ;
@@ -15,9 +15,11 @@ import java.util.*;
 import me.egg82.altfinder.commands.AltFinderCommand;
 import me.egg82.altfinder.commands.SeenCommand;
 import me.egg82.altfinder.events.PostLoginCacheHandler;
+import me.egg82.altfinder.extended.RedisSubscriber;
 import me.egg82.altfinder.hooks.PlayerAnalyticsHook;
 import me.egg82.altfinder.hooks.PluginHook;
 import me.egg82.altfinder.services.GameAnalyticsErrorHandler;
+import me.egg82.altfinder.services.lookup.PlayerLookup;
 import me.egg82.altfinder.utils.*;
 import net.kyori.text.TextComponent;
 import net.kyori.text.format.TextColor;
@@ -148,6 +150,14 @@ public class AltFinder {
     }
 
     public void unloadServices() {
+        ConfigUtil.getCachedConfig().ifPresent(EngineConfigUtil::close);
+        PlayerLookup.close();
+        try {
+            ServiceLocator.getOptional(RedisSubscriber.class).ifPresent(RedisSubscriber::close);
+        } catch (InstantiationException | IllegalAccessException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+
         ServiceUtil.unregisterWorkPool();
         ServiceUtil.unregisterRedis();
         ServiceUtil.unregisterRabbit();
@@ -33,10 +33,10 @@ public class AltFinderCommand extends BaseCommand {
 
     @Subcommand("search|find")
     @CommandPermission("altfinder.search")
-    @Description("Finds potential alt accounts on the IP or player specified.")
-    @Syntax("<ip|name>")
-    public void onSearch(CommandSource source, String search) {
-        new SearchCommand(source, search, proxy).run();
+    @Description("Finds potential alt accounts on the IP or player specified, following alts-of-alts out to depth hops.")
+    @Syntax("<ip|name> [depth]")
+    public void onSearch(CommandSource source, String search, @Default("2") int depth) {
+        new SearchCommand(source, search, depth, proxy).run();
     }
 
     @Subcommand("delete|del|gdpr")
@@ -22,13 +22,18 @@ public class SearchCommand implements Runnable {
 
     private final CommandSource source;
     private final String search;
+    private final int depth;
     private final ProxyServer proxy;
 
+    private static final int MAX_DEPTH = 5;
+    private static final int MAX_PLAYERS = 100;
+
     private final AltAPI api = AltAPI.getInstance();
 
-    public SearchCommand(CommandSource source, String search, ProxyServer proxy) {
+    public SearchCommand(CommandSource source, String search, int depth, ProxyServer proxy) {
         this.source = source;
         this.search = search;
+        this.depth = Math.max(1, Math.min(depth, MAX_DEPTH));
         this.proxy = proxy;
     }
 
@@ -45,12 +50,13 @@ public class SearchCommand implements Runnable {
                 source.sendMessage(LogUtil.getHeading().append(TextComponent.of("Internal error").color(TextColor.DARK_RED)).build());
                 return;
             }
+            Set<UUID> uuids = new HashSet<>();
             for (PlayerData d : data) {
-                playerInfo.add(new PlayerInfoContainer(d).setName(getName(d.getUUID(), proxy)));
+                uuids.add(d.getUUID());
             }
-
-            for (PlayerInfoContainer i : playerInfo) {
-                i.setName(getName(i.getData().getUUID(), proxy));
+            Map<UUID, String> names = PlayerLookup.getNames(uuids, proxy);
+            for (PlayerData d : data) {
+                playerInfo.add(new PlayerInfoContainer(d).setName(names.get(d.getUUID())));
             }
 
             List<PlayerInfoContainer> sorted = new ArrayList<>(playerInfo);
@@ -79,63 +85,54 @@ public class SearchCommand implements Runnable {
                 return;
             }
 
-            ImmutableSet<PlayerData> playerData;
+            Map<UUID, Integer> linked;
             try {
-                playerData = api.getPlayerData(uuid);
+                linked = new LinkedHashMap<>(api.getLinkedPlayers(uuid, depth, MAX_PLAYERS));
             } catch (APIException ex) {
                 logger.error(ex.getMessage(), ex);
                 source.sendMessage(LogUtil.getHeading().append(TextComponent.of("Internal error").color(TextColor.DARK_RED)).build());
                 return;
             }
+            linked.remove(uuid);
 
-            Set<PlayerData> altData = new HashSet<>(playerData);
-            for (PlayerData data : playerData) {
-                try {
-                    altData.addAll(api.getPlayerData(data.getIP()));
-                } catch (APIException ex) {
-                    logger.error(ex.getMessage(), ex);
-                }
-            }
-            altData.removeIf(v2 -> uuid.equals(v2.getUUID()));
-
-            Set<PlayerInfoContainer> altInfo = new HashSet<>();
-            for (PlayerData data : altData) {
-                altInfo.add(new PlayerInfoContainer(data));
+            if (linked.isEmpty()) {
+                source.sendMessage(LogUtil.getHeading().append(TextComponent.of("No potential alts found.").color(TextColor.RED)).build());
+                return;
             }
 
-            for (PlayerInfoContainer i :altInfo) {
-                i.setName(getName(i.getData().getUUID(), proxy));
+            // One batch lookup, so alts are listed most-seen first within each hop
+            Map<UUID, Long> counts = new HashMap<>();
+            try {
+                for (PlayerData data : api.getPlayerDataByUUIDs(linked.keySet())) {
+                    counts.merge(data.getUUID(), data.getCount(), Long::sum);
+                }
+            } catch (APIException ex) {
+                logger.error(ex.getMessage(), ex);
             }
-
-            List<PlayerInfoContainer> sorted = new ArrayList<>(altInfo);
-            sorted.sort((v1, v2) -> Long.compare(v2.getData().getCount(), v1.getData().getCount()));
-
-            TextComponent.Builder alts = TextComponent.builder();
-            for (int i = 0; i < sorted.size(); i++) {
-                PlayerInfoContainer info = sorted.get(i);
-                alts.append(info.getName() != null ? TextComponent.of(info.getName()).color(TextColor.GREEN) : TextComponent.of("UNKNOWN").color(TextColor.RED));
-                if (i < sorted.size() - 1) {
-                    alts.append(TextComponent.of(", ").color(TextColor.YELLOW));
+            List<UUID> sorted = new ArrayList<>(linked.keySet());
+            sorted.sort(Comparator.<UUID>comparingInt(linked::get).thenComparing(u -> counts.getOrDefault(u, 0L), Comparator.reverseOrder()));
+
+            Map<UUID, String> names = PlayerLookup.getNames(sorted, proxy);
+            Map<Integer, TextComponent.Builder> alts = new TreeMap<>();
+            for (UUID alt : sorted) {
+                TextComponent.Builder builder = alts.get(linked.get(alt));
+                if (builder == null) {
+                    builder = TextComponent.builder();
+                    alts.put(linked.get(alt), builder);
+                } else {
+                    builder.append(TextComponent.of(", ").color(TextColor.YELLOW));
                 }
+                String name = names.get(alt);
+                builder.append(name != null ? TextComponent.of(name).color(TextColor.GREEN) : TextComponent.of("UNKNOWN").color(TextColor.RED));
             }
 
-            if (sorted.isEmpty()) {
-                source.sendMessage(LogUtil.getHeading().append(TextComponent.of("No potential alts found.").color(TextColor.RED)).build());
-            } else {
-                source.sendMessage(LogUtil.getHeading().append(TextComponent.of("Potential alts: ").color(TextColor.YELLOW)).append(alts.build()).build());
+            for (Map.Entry<Integer, TextComponent.Builder> kvp : alts.entrySet()) {
+                String label = kvp.getKey() == 1 ? "Potential alts: " : "Alts " + kvp.getKey() + " hops away: ";
+                source.sendMessage(LogUtil.getHeading().append(TextComponent.of(label).color(TextColor.YELLOW)).append(kvp.getValue().build()).build());
             }
         }
     }
 
-    private String getName(UUID uuid, ProxyServer proxy) {
-        try {
-            return PlayerLookup.get(uuid, proxy).getName();
-        } catch (IOException ex) {
-            logger.error(ex.getMessage(), ex);
-            return null;
-        }
-    }
-
     private UUID getUuid(String name, ProxyServer proxy) {
         try {
             return PlayerLookup.get(name, proxy).getUUID();
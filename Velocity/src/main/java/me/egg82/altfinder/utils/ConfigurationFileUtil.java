@@ -15,6 +15,7 @@ import me.egg82.altfinder.enums.SQLType;
 import me.egg82.altfinder.extended.CachedConfigValues;
 import me.egg82.altfinder.extended.Configuration;
 import me.egg82.altfinder.extended.RabbitMQReceiver;
+import me.egg82.altfinder.extended.RedisSubscriber;
 import net.kyori.text.TextComponent;
 import net.kyori.text.format.TextColor;
 import ninja.egg82.service.ServiceLocator;
@@ -69,23 +70,32 @@ public class ConfigurationFileUtil {
         }
 
         try {
-            destroyServices(ServiceLocator.getOptional(CachedConfigValues.class), ServiceLocator.getOptional(RabbitMQReceiver.class));
+            destroyServices(ServiceLocator.getOptional(CachedConfigValues.class), ServiceLocator.getOptional(RabbitMQReceiver.class), ServiceLocator.getOptional(RedisSubscriber.class));
         } catch (InstantiationException | IllegalAccessException | IOException | TimeoutException ex) {
             logger.error(ex.getMessage(), ex);
         }
 
-        CachedConfigValues cachedValues = CachedConfigValues.builder()
+        File dataDirectory = new File(description.getSource().get().getParent().toFile(), description.getName().get());
+        String serverName = ServerNameUtil.getName(new File(dataDirectory, "server-name.txt"));
+        CachedConfigValues.Builder cachedBuilder = CachedConfigValues.builder()
                 .debug(debug)
                 .ignored(ignored)
                 .redisPool(getRedisPool(proxy, config.getNode("redis")))
                 .rabbitConnectionFactory(getRabbitConnectionFactory(proxy, config.getNode("rabbitmq")))
                 .sql(getSQL(proxy, description, config.getNode("storage")))
                 .sqlType(config.getNode("storage", "method").getString("sqlite"))
-                .serverName(ServerNameUtil.getName(new File(new File(description.getSource().get().getParent().toFile(), description.getName().get()), "server-name.txt")))
-                .build();
+                .serverName(serverName);
+        EngineConfigUtil.load(cachedBuilder, config, dataDirectory, ServerIDUtil.getID(new File(dataDirectory, "stats-id.txt")), serverName);
+        CachedConfigValues cachedValues = cachedBuilder.build();
 
         ServiceLocator.register(config);
         ServiceLocator.register(cachedValues);
+        ConfigUtil.setConfiguration(config, cachedValues);
+
+        // Connects through the cached config, so only after it's set
+        if (cachedValues.getRedisPool() != null) {
+            ServiceLocator.register(new RedisSubscriber());
+        }
 
         if (debug) {
             proxy.getConsoleCommandSource().sendMessage(LogUtil.getHeading().append(TextComponent.of("Using Redis: ").color(TextColor.YELLOW)).append(TextComponent.of(String.valueOf(cachedValues.getRedisPool() != null)).color(TextColor.WHITE)).build());
@@ -128,11 +138,12 @@ public class ConfigurationFileUtil {
         return config;
     }
 
-    private static void destroyServices(Optional<CachedConfigValues> cachedConfigValues, Optional<RabbitMQReceiver> rabbitReceiver) throws IOException, TimeoutException {
+    private static void destroyServices(Optional<CachedConfigValues> cachedConfigValues, Optional<RabbitMQReceiver> rabbitReceiver, Optional<RedisSubscriber> redisSubscriber) throws IOException, TimeoutException {
         if (!cachedConfigValues.isPresent()) {
             return;
         }
 
+        EngineConfigUtil.close(cachedConfigValues.get());
         cachedConfigValues.get().getSQL().close();
 
         if (cachedConfigValues.get().getRedisPool() != null) {
@@ -142,6 +153,10 @@ public class ConfigurationFileUtil {
         if (rabbitReceiver.isPresent()) {
             rabbitReceiver.get().close();
         }
+
+        if (redisSubscriber.isPresent()) {
+            redisSubscriber.get().close();
+        }
     }
 
     private static SQL getSQL(ProxyServer proxy, PluginDescription description, ConfigurationNode storageConfigNode) {